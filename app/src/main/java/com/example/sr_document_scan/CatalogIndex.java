@@ -0,0 +1,111 @@
+package com.example.sr_document_scan;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+// Secondary indexes over the catalog, one sorted set per CatalogQuery.SortKey.
+// Updates cost O(log n) per index, and a query walks only as far into the chosen
+// index as it needs to fill the requested page.
+public class CatalogIndex {
+
+    // Ties on the sort key are broken by id so every summary has a unique position
+    private static final Comparator<FolderSummary> BY_ID =
+            (a, b) -> a.getId().compareTo(b.getId());
+
+    private static final Comparator<FolderSummary> BY_DATE =
+            Comparator.comparingLong(FolderSummary::getCreatedAt).thenComparing(BY_ID);
+    private static final Comparator<FolderSummary> BY_NAME =
+            Comparator.comparing(FolderSummary::getNameLower).thenComparing(BY_ID);
+    private static final Comparator<FolderSummary> BY_PAGE_COUNT =
+            Comparator.comparingInt(FolderSummary::getPageCount).thenComparing(BY_ID);
+    private static final Comparator<FolderSummary> BY_SIZE =
+            Comparator.comparingLong(FolderSummary::getSizeBytes).thenComparing(BY_ID);
+
+    private final Map<String, FolderSummary> byId = new HashMap<>();
+    private final Map<CatalogQuery.SortKey, TreeSet<FolderSummary>> indexes =
+            new EnumMap<>(CatalogQuery.SortKey.class);
+
+    public CatalogIndex() {
+        indexes.put(CatalogQuery.SortKey.DATE, new TreeSet<>(BY_DATE));
+        indexes.put(CatalogQuery.SortKey.NAME, new TreeSet<>(BY_NAME));
+        indexes.put(CatalogQuery.SortKey.PAGE_COUNT, new TreeSet<>(BY_PAGE_COUNT));
+        indexes.put(CatalogQuery.SortKey.SIZE, new TreeSet<>(BY_SIZE));
+    }
+
+    // Insert a summary, replacing any existing one with the same id
+    public synchronized void put(FolderSummary summary) {
+        FolderSummary previous = byId.put(summary.getId(), summary);
+        for (TreeSet<FolderSummary> index : indexes.values()) {
+            if (previous != null) {
+                index.remove(previous);
+            }
+            index.add(summary);
+        }
+    }
+
+    public synchronized void remove(String id) {
+        FolderSummary previous = byId.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (TreeSet<FolderSummary> index : indexes.values()) {
+            index.remove(previous);
+        }
+    }
+
+    public synchronized void clear() {
+        byId.clear();
+        for (TreeSet<FolderSummary> index : indexes.values()) {
+            index.clear();
+        }
+    }
+
+    public synchronized FolderSummary get(String id) {
+        return byId.get(id);
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    // Summaries matching the query, in query order, for the requested offset/limit window
+    public synchronized List<FolderSummary> query(CatalogQuery query) {
+        NavigableSet<FolderSummary> view = indexes.get(query.getSortKey());
+
+        // The date index can jump straight to the requested range
+        if (query.getSortKey() == CatalogQuery.SortKey.DATE && query.hasDateFilter()) {
+            if (query.getCreatedFrom() > query.getCreatedTo()) {
+                return new ArrayList<>();
+            }
+            FolderSummary low = new FolderSummary("", null, query.getCreatedFrom(), 0, 0);
+            FolderSummary high = new FolderSummary("\uffff", null, query.getCreatedTo(), 0, 0);
+            view = view.subSet(low, true, high, true);
+        }
+        if (query.isDescending()) {
+            view = view.descendingSet();
+        }
+
+        List<FolderSummary> page = new ArrayList<>(Math.min(query.getLimit(), 64));
+        int skipped = 0;
+        for (FolderSummary summary : view) {
+            if (page.size() >= query.getLimit()) {
+                break;
+            }
+            if (!query.matches(summary)) {
+                continue;
+            }
+            if (skipped < query.getOffset()) {
+                skipped++;
+                continue;
+            }
+            page.add(summary);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.sr_document_scan;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Versioned format of the stored folder records. Each record carries its own "version";
+// records written before versioning have none and count as version 0. Steps are registered
+// in order, step N turns a version N record into version N + 1, so a record read from any
+// older app version can be brought up to date one step at a time.
+public class CatalogMigrator {
+    public static final String KEY_VERSION = "version";
+
+    // One format change, applied in place to a folder record
+    public interface Step {
+        String getDescription();
+
+        void apply(JSONObject record) throws JSONException;
+    }
+
+    private final List<Step> steps;
+
+    public CatalogMigrator(List<Step> steps) {
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+    }
+
+    // The steps the app ships with. Append new ones here, never change or reorder old ones.
+    public static CatalogMigrator standard() {
+        List<Step> steps = new ArrayList<>();
+        steps.add(new FillDefaultsStep());      // 0 -> 1
+        steps.add(new EpochTimestampsStep());   // 1 -> 2
+        return new CatalogMigrator(steps);
+    }
+
+    public int getCurrentVersion() {
+        return steps.size();
+    }
+
+    public static int versionOf(JSONObject record) {
+        return record.optInt(KEY_VERSION, 0);
+    }
+
+    public boolean needsUpgrade(JSONObject record) {
+        return versionOf(record) < getCurrentVersion();
+    }
+
+    // Bring a record up to the current version in place. Returns false if it already was.
+    // Records from a newer version are left alone. If a step fails the record may be
+    // partly changed, so callers that persist the result should upgrade a copy.
+    public boolean upgrade(JSONObject record) throws JSONException {
+        int version = versionOf(record);
+        if (version >= getCurrentVersion()) {
+            return false;
+        }
+        for (int i = Math.max(version, 0); i < steps.size(); i++) {
+            steps.get(i).apply(record);
+            record.put(KEY_VERSION, i + 1);
+        }
+        return true;
+    }
+
+    // --- Steps ---
+
+    // Fields added after the first release get explicit values instead of relying on
+    // every reader's fallbacks: page rotation and original image, folder enhancement.
+    static class FillDefaultsStep implements Step {
+        @Override
+        public String getDescription() {
+            return "Fill in defaults for page rotation, original image and enhancement";
+        }
+
+        @Override
+        public void apply(JSONObject record) throws JSONException {
+            if (!record.has("enhancement")) {
+                record.put("enhancement", ImageEnhancer.Mode.ORIGINAL.name());
+            }
+            if (!record.has("deskew")) {
+                record.put("deskew", false);
+            }
+
+            JSONArray documents = record.optJSONArray("documents");
+            if (documents == null) {
+                record.put("documents", new JSONArray());
+                return;
+            }
+            for (int i = 0; i < documents.length(); i++) {
+                JSONObject document = documents.getJSONObject(i);
+                if (!document.has("rotation")) {
+                    document.put("rotation", 0);
+                }
+                if (!document.has("originalUri")) {
+                    document.put("originalUri", document.getString("uri"));
+                }
+            }
+        }
+    }
+
+    // Creation times as epoch millis next to the display strings, which were formatted
+    // in whatever locale the device had at the time and can't be sorted or compared
+    static class EpochTimestampsStep implements Step {
+        private static final String DISPLAY_FORMAT = "MMM dd, yyyy HH:mm:ss";
+
+        @Override
+        public String getDescription() {
+            return "Add createdAt epoch millis to folders and pages";
+        }
+
+        @Override
+        public void apply(JSONObject record) throws JSONException {
+            // Folder ids are the creation time in millis (see DocumentFolder)
+            long folderCreatedAt;
+            try {
+                folderCreatedAt = Long.parseLong(record.optString("id"));
+            } catch (NumberFormatException e) {
+                folderCreatedAt = parseDisplayTime(record.optString("timestamp"), 0);
+            }
+            record.put("createdAt", folderCreatedAt);
+
+            JSONArray documents = record.optJSONArray("documents");
+            for (int i = 0; documents != null && i < documents.length(); i++) {
+                JSONObject document = documents.getJSONObject(i);
+                document.put("createdAt", parseDisplayTime(document.optString("timestamp"), folderCreatedAt));
+            }
+        }
+
+        // Display strings were written in the device locale, usually still the default;
+        // US is tried next. The formatters are reused for every page. SimpleDateFormat is
+        // not thread-safe and the loader and the sweep can both upgrade records, so
+        // parsing is synchronized.
+        private Locale defaultLocale;
+        private SimpleDateFormat defaultFormat;
+        private final SimpleDateFormat usFormat = newFormat(Locale.US);
+
+        synchronized long parseDisplayTime(String text, long fallback) {
+            if (text == null || text.isEmpty()) {
+                return fallback;
+            }
+            Locale locale = Locale.getDefault();
+            if (!locale.equals(defaultLocale)) {
+                defaultLocale = locale;
+                defaultFormat = locale.equals(Locale.US) ? null : newFormat(locale);
+            }
+            for (SimpleDateFormat format : new SimpleDateFormat[]{defaultFormat, usFormat}) {
+                if (format == null) {
+                    continue;
+                }
+                try {
+                    return format.parse(text).getTime();
+                } catch (ParseException e) {
+                    // Try the next locale
+                }
+            }
+            return fallback;
+        }
+
+        private static SimpleDateFormat newFormat(Locale locale) {
+            SimpleDateFormat format = new SimpleDateFormat(DISPLAY_FORMAT, locale);
+            format.setLenient(false);
+            return format;
+        }
+    }
+}
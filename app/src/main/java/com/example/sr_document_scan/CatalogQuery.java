@@ -0,0 +1,85 @@
+package com.example.sr_document_scan;
+
+import java.util.Locale;
+
+// What to read from the catalog: sort order, filters and the page to return
+public class CatalogQuery {
+
+    public enum SortKey {
+        DATE,
+        NAME,
+        PAGE_COUNT,
+        SIZE
+    }
+
+    private SortKey sortKey = SortKey.DATE;
+    private boolean descending = true;
+    private String nameContains;
+    private long createdFrom = Long.MIN_VALUE;
+    private long createdTo = Long.MAX_VALUE;
+    private int offset = 0;
+    private int limit = Integer.MAX_VALUE;
+
+    public CatalogQuery sortBy(SortKey sortKey, boolean descending) {
+        this.sortKey = sortKey;
+        this.descending = descending;
+        return this;
+    }
+
+    // Case-insensitive substring match on the folder name, null for no filter
+    public CatalogQuery nameContains(String text) {
+        this.nameContains = text == null || text.isEmpty() ? null : text.toLowerCase(Locale.ROOT);
+        return this;
+    }
+
+    // Inclusive range of creation times in millis
+    public CatalogQuery createdBetween(long fromMillis, long toMillis) {
+        this.createdFrom = fromMillis;
+        this.createdTo = toMillis;
+        return this;
+    }
+
+    public CatalogQuery page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must be >= 0");
+        }
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    public SortKey getSortKey() {
+        return sortKey;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public long getCreatedFrom() {
+        return createdFrom;
+    }
+
+    public long getCreatedTo() {
+        return createdTo;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasDateFilter() {
+        return createdFrom != Long.MIN_VALUE || createdTo != Long.MAX_VALUE;
+    }
+
+    public boolean matches(FolderSummary summary) {
+        if (summary.getCreatedAt() < createdFrom || summary.getCreatedAt() > createdTo) {
+            return false;
+        }
+        return nameContains == null || summary.getNameLower().contains(nameContains);
+    }
+}
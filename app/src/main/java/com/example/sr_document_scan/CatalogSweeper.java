@@ -0,0 +1,166 @@
+package com.example.sr_document_scan;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+// Upgrades the stored catalog to the current record version a slice at a time, so the
+// work can run in the background. Each slice parses and rewrites only its own records.
+// The position reached is written together with each slice, so after a crash the next
+// sweep carries on where the last one stopped and no record is migrated twice.
+public class CatalogSweeper {
+
+    // Where the catalog lives. write() must store the records and cursor atomically.
+    // Reads may happen without the lock; everything else that saves records holds it.
+    public interface Store {
+        Object getLock();
+
+        // Ids of the stored folder records in catalog order, null when there is no catalog
+        List<String> readIds() throws JSONException;
+
+        // The stored record for a folder as JSON, null when there is none
+        String readRecord(String id);
+
+        // Index into readIds() of the first record the sweep has not looked at yet
+        int readCursor();
+
+        boolean write(Map<String, String> records, int cursor);
+
+        // Every record is at this version; the sweep doesn't need to run again
+        void markComplete(int version);
+
+        // The version last passed to markComplete, lower than any version when there is none
+        int readCompleteVersion();
+    }
+
+    public interface Callback {
+        // Called on the sweep's thread; error is null when the sweep ran to the end
+        void onSweepFinished(@Nullable Exception error);
+    }
+
+    private final CatalogMigrator migrator;
+    private final Store store;
+    private final int sliceSize;
+
+    private int migrated;
+    private int failed;
+
+    public CatalogSweeper(@NonNull CatalogMigrator migrator, @NonNull Store store, int sliceSize) {
+        if (sliceSize <= 0) {
+            throw new IllegalArgumentException("sliceSize must be positive");
+        }
+        this.migrator = migrator;
+        this.store = store;
+        this.sliceSize = sliceSize;
+    }
+
+    // Look at the next sliceSize records and upgrade the stale ones. Returns true while
+    // there is more to do. Reading, upgrading and serializing happen without the lock;
+    // it is only held to check that nobody saved the same records in the meantime and to
+    // write the slice.
+    public boolean runSlice() throws JSONException {
+        List<String> ids = store.readIds();
+        if (ids == null) {
+            store.markComplete(migrator.getCurrentVersion());
+            return false;
+        }
+
+        int start = Math.max(store.readCursor(), 0);
+        int end = Math.min(start + sliceSize, ids.size());
+        Map<String, String> read = new HashMap<>();
+        Map<String, String> upgraded = new HashMap<>();
+        int slicedFailed = 0;
+        for (int i = start; i < end; i++) {
+            String id = ids.get(i);
+            String json = store.readRecord(id);
+            if (json == null) {
+                continue;
+            }
+            // Only a successful upgrade is stored, a failing step leaves the record as it was
+            JSONObject record = new JSONObject(json);
+            if (!migrator.needsUpgrade(record)) {
+                continue;
+            }
+            try {
+                migrator.upgrade(record);
+                read.put(id, json);
+                upgraded.put(id, record.toString());
+            } catch (JSONException e) {
+                // Left at its version, readers still upgrade it lazily
+                slicedFailed++;
+            }
+        }
+
+        boolean done = end >= ids.size();
+        if (start != end) {
+            synchronized (store.getLock()) {
+                if (store.readCursor() != start) {
+                    // The catalog was saved as a whole, or another sweep got here first
+                    return true;
+                }
+                // A record saved since we read it was written at the current version, keep it
+                Iterator<Map.Entry<String, String>> it = upgraded.entrySet().iterator();
+                while (it.hasNext()) {
+                    String id = it.next().getKey();
+                    if (!read.get(id).equals(store.readRecord(id))) {
+                        it.remove();
+                    }
+                }
+                if (!store.write(upgraded, end)) {
+                    // Nothing was stored, the next slice starts over from the stored cursor
+                    return true;
+                }
+            }
+            migrated += upgraded.size();
+            failed += slicedFailed;
+        }
+        if (done) {
+            store.markComplete(migrator.getCurrentVersion());
+        }
+        return !done;
+    }
+
+    // True when a finished sweep already brought every record to the current version
+    public boolean isComplete() {
+        return store.readCompleteVersion() >= migrator.getCurrentVersion();
+    }
+
+    // Run slices on the executor, pausing between them, until every record is current.
+    // The completion check reads the store as well, so it happens there too: the calling
+    // thread never touches the store and returns at once, whatever the catalog size.
+    public void sweepOn(@NonNull Executor executor, final long pauseMs, @NonNull final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Exception error = null;
+                try {
+                    while (!isComplete() && runSlice()) {
+                        Thread.sleep(pauseMs);
+                    }
+                } catch (JSONException e) {
+                    error = e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    error = e;
+                }
+                callback.onSweepFinished(error);
+            }
+        });
+    }
+
+    public int getMigrated() {
+        return migrated;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+}
@@ -9,20 +9,24 @@ import java.util.Locale;
 public class DocumentFolder {
     private String name;
     private String timestamp;
+    private long createdAt;
     private List<ScannedDocument> documents;
     private String uniqueId;
+    private ImageEnhancer.Mode enhancementMode = ImageEnhancer.Mode.ORIGINAL;
+    private boolean deskew;
 
     public DocumentFolder() {
         this.documents = new ArrayList<>();
-        this.uniqueId = String.valueOf(System.currentTimeMillis());
+        this.createdAt = System.currentTimeMillis();
+        this.uniqueId = String.valueOf(createdAt);
 
         // Generate timestamp in format Apr 23, 2025 14:30:45
         SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.getDefault());
-        this.timestamp = sdf.format(new Date());
+        this.timestamp = sdf.format(new Date(createdAt));
 
         // Default name based on date/time
         SimpleDateFormat nameSdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
-        this.name = "Scan_" + nameSdf.format(new Date());
+        this.name = "Scan_" + nameSdf.format(new Date(createdAt));
     }
 
     public String getName() {
@@ -37,6 +41,19 @@ public class DocumentFolder {
         return timestamp;
     }
 
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    // Creation time in epoch millis, timestamp is the same moment formatted for display
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public List<ScannedDocument> getDocuments() {
         return documents;
     }
@@ -45,6 +62,43 @@ public class DocumentFolder {
         documents.add(document);
     }
 
+    public void insertDocument(int index, ScannedDocument document) {
+        documents.add(index, document);
+    }
+
+    // Move the page at from so that it ends up at position to
+    public void movePage(int from, int to) {
+        ScannedDocument document = documents.remove(from);
+        documents.add(to, document);
+    }
+
+    public ScannedDocument removePage(int index) {
+        return documents.remove(index);
+    }
+
+    // Rotate a page clockwise by a multiple of 90 degrees
+    public void rotatePage(int index, int degrees) {
+        ScannedDocument document = documents.get(index);
+        document.setRotation(document.getRotation() + degrees);
+    }
+
+    // How pages in this folder are cleaned up after they are scanned
+    public ImageEnhancer.Mode getEnhancementMode() {
+        return enhancementMode;
+    }
+
+    public void setEnhancementMode(ImageEnhancer.Mode enhancementMode) {
+        this.enhancementMode = enhancementMode;
+    }
+
+    public boolean isDeskew() {
+        return deskew;
+    }
+
+    public void setDeskew(boolean deskew) {
+        this.deskew = deskew;
+    }
+
     public String getUniqueId() {
         return uniqueId;
     }
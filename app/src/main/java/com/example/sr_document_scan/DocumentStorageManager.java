@@ -3,9 +3,12 @@ package com.example.sr_document_scan;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -17,12 +20,58 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class DocumentStorageManager {
     private static final String TAG = "DocumentStorageMgr";
     private static final String PREF_NAME = "document_folders";
-    private static final String KEY_FOLDERS = "folders";
+    // Each folder record is stored under its own key, so saving one folder serializes only
+    // that folder. The id list keeps the catalog order and changes only when folders are
+    // added or removed. Catalogs saved before this kept every record in one array.
+    private static final String KEY_FOLDER_IDS = "folder_ids";
+    private static final String KEY_FOLDER_PREFIX = "folder_";
+    private static final String KEY_LEGACY_FOLDERS = "folders";
+    // How far a sweep has got, written with each slice of records
+    private static final String KEY_MIGRATION_CURSOR = "migration_cursor";
+    // Record version every stored folder is known to have. It lives in a file of its own,
+    // so checking it never waits for the whole catalog to be read from disk.
+    private static final String META_PREF_NAME = "document_catalog_meta";
+    private static final String KEY_CATALOG_VERSION = "catalog_version";
+    // Folders looked at per migration slice, and the pause between slices
+    private static final int MIGRATION_SLICE = 500;
+    private static final long MIGRATION_PAUSE_MS = 50;
+
+    private static final CatalogMigrator migrator = CatalogMigrator.standard();
+    private static final Object migrationLock = new Object();
+    private static boolean migrationScheduled;
+
+    // Parsed catalog shared by every DocumentStorageManager in the process. The map keeps
+    // the stored order, the index serves sorted and paginated queries.
+    private static final Object catalogLock = new Object();
+    private static Map<String, DocumentFolder> catalogCache;
+    private static CatalogIndex catalogIndex;
+
+    // The first load parses every record, so it and the queries behind the home screen
+    // run here instead of on the main thread
+    private static final ExecutorService catalogExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface QueryCallback {
+        // Called on the main thread
+        void onFoldersLoaded(List<DocumentFolder> folders);
+    }
+
+    public interface FolderCallback {
+        // Called on the main thread, with null when there is no such folder
+        void onFolderLoaded(@Nullable DocumentFolder folder);
+    }
 
     private final Context context;
 
@@ -30,88 +79,440 @@ public class DocumentStorageManager {
         this.context = context.getApplicationContext();
     }
 
-    // Save a list of document folders to SharedPreferences
+    // Save a list of document folders to SharedPreferences, replacing the whole catalog
     public void saveFolders(List<DocumentFolder> folders) {
-        try {
-            SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-            JSONArray foldersArray = new JSONArray();
-
-            for (DocumentFolder folder : folders) {
-                JSONObject folderObj = new JSONObject();
-                folderObj.put("id", folder.getUniqueId());
-                folderObj.put("name", folder.getName());
-                folderObj.put("timestamp", folder.getTimestamp());
-
-                JSONArray docsArray = new JSONArray();
-                for (ScannedDocument doc : folder.getDocuments()) {
-                    JSONObject docObj = new JSONObject();
-                    docObj.put("uri", doc.getImageUri().toString());
-                    docObj.put("name", doc.getName());
-                    docObj.put("timestamp", doc.getTimestamp());
-                    docsArray.put(docObj);
+        synchronized (catalogLock) {
+            try {
+                SharedPreferences prefs = getPrefs();
+                SharedPreferences.Editor editor = prefs.edit();
+                for (String key : prefs.getAll().keySet()) {
+                    if (key.startsWith(KEY_FOLDER_PREFIX)) {
+                        editor.remove(key);
+                    }
                 }
 
-                folderObj.put("documents", docsArray);
-                foldersArray.put(folderObj);
+                catalogCache = new LinkedHashMap<>();
+                catalogIndex = new CatalogIndex();
+                for (DocumentFolder folder : folders) {
+                    long sizeBytes = getFolderSizeBytes(folder.getUniqueId());
+                    editor.putString(KEY_FOLDER_PREFIX + folder.getUniqueId(), toRecord(folder, sizeBytes).toString());
+                    catalogCache.put(folder.getUniqueId(), folder);
+                    catalogIndex.put(FolderSummary.from(folder, sizeBytes));
+                }
+
+                // Every record is written at the current version, so no sweep is needed after this
+                editor.putString(KEY_FOLDER_IDS, new JSONArray(catalogCache.keySet()).toString());
+                editor.remove(KEY_LEGACY_FOLDERS);
+                editor.remove(KEY_MIGRATION_CURSOR);
+                editor.apply();
+                getMetaPrefs().edit().putInt(KEY_CATALOG_VERSION, migrator.getCurrentVersion()).apply();
+
+                Log.d(TAG, "Saved " + folders.size() + " folders to SharedPreferences");
+
+            } catch (JSONException e) {
+                Log.e(TAG, "Error saving folders: " + e.getMessage());
             }
+        }
+    }
+
+    private SharedPreferences getPrefs() {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    private SharedPreferences getMetaPrefs() {
+        return context.getSharedPreferences(META_PREF_NAME, Context.MODE_PRIVATE);
+    }
 
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(KEY_FOLDERS, foldersArray.toString());
-            editor.apply();
+    // The stored form of one folder, at the current record version
+    static JSONObject toRecord(DocumentFolder folder, long sizeBytes) throws JSONException {
+        JSONObject folderObj = new JSONObject();
+        folderObj.put(CatalogMigrator.KEY_VERSION, migrator.getCurrentVersion());
+        folderObj.put("id", folder.getUniqueId());
+        folderObj.put("name", folder.getName());
+        folderObj.put("timestamp", folder.getTimestamp());
+        folderObj.put("createdAt", folder.getCreatedAt());
+        folderObj.put("enhancement", folder.getEnhancementMode().name());
+        folderObj.put("deskew", folder.isDeskew());
+        folderObj.put("sizeBytes", sizeBytes);
+
+        JSONArray docsArray = new JSONArray();
+        for (ScannedDocument doc : folder.getDocuments()) {
+            JSONObject docObj = new JSONObject();
+            docObj.put("uri", doc.getImageUri().toString());
+            docObj.put("name", doc.getName());
+            docObj.put("timestamp", doc.getTimestamp());
+            docObj.put("createdAt", doc.getCreatedAt());
+            docObj.put("rotation", doc.getRotation());
+            docObj.put("originalUri", doc.getOriginalUri().toString());
+            if (doc.getEnhancement() != null) {
+                docObj.put("enhancedWith", doc.getEnhancement());
+            }
+            docsArray.put(docObj);
+        }
 
-            Log.d(TAG, "Saved " + folders.size() + " folders to SharedPreferences");
+        folderObj.put("documents", docsArray);
+        return folderObj;
+    }
 
+    // Read one stored folder. Older records are upgraded in memory as they are read, the
+    // stored copy is rewritten by the next save of that folder or by the background sweep.
+    static DocumentFolder fromRecord(JSONObject folderObj) throws JSONException {
+        try {
+            migrator.upgrade(folderObj);
         } catch (JSONException e) {
-            Log.e(TAG, "Error saving folders: " + e.getMessage());
+            Log.e(TAG, "Error migrating folder record " + folderObj.optString("id") + ": " + e.getMessage());
+        }
+
+        DocumentFolder folder = new DocumentFolder();
+        // Properly set the uniqueId
+        folder.setUniqueId(folderObj.getString("id"));
+        folder.setName(folderObj.getString("name"));
+        if (folderObj.has("timestamp")) {
+            folder.setTimestamp(folderObj.getString("timestamp"));
         }
+        folder.setCreatedAt(folderObj.optLong("createdAt", 0));
+        folder.setEnhancementMode(parseEnhancementMode(folderObj.optString("enhancement")));
+        folder.setDeskew(folderObj.optBoolean("deskew", false));
+
+        // Get documents array
+        JSONArray docsArray = folderObj.getJSONArray("documents");
+        for (int j = 0; j < docsArray.length(); j++) {
+            JSONObject docObj = docsArray.getJSONObject(j);
+            Uri uri = Uri.parse(docObj.getString("uri"));
+
+            ScannedDocument document = new ScannedDocument(uri);
+            document.setName(docObj.getString("name"));
+            if (docObj.has("timestamp")) {
+                document.setTimestamp(docObj.getString("timestamp"));
+            }
+            document.setCreatedAt(docObj.optLong("createdAt", folder.getCreatedAt()));
+            document.setRotation(docObj.optInt("rotation", 0));
+            // Folders saved before enhancement existed only have the original image
+            String originalUri = docObj.optString("originalUri", null);
+            if (originalUri != null) {
+                document.setOriginalUri(Uri.parse(originalUri));
+            }
+            document.setEnhancement(docObj.optString("enhancedWith", null));
+            folder.addDocument(document);
+        }
+        return folder;
     }
 
     // Load document folders from SharedPreferences
     public List<DocumentFolder> loadFolders() {
-        List<DocumentFolder> folders = new ArrayList<>();
+        synchronized (catalogLock) {
+            ensureCatalogLoaded();
+            return new ArrayList<>(catalogCache.values());
+        }
+    }
+
+    // Start parsing the catalog in the background, so it is ready by the first query
+    public void preloadCatalog() {
+        catalogExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (catalogLock) {
+                    ensureCatalogLoaded();
+                }
+            }
+        });
+    }
+
+    // Parse the stored catalog and build the query indexes. Callers hold catalogLock.
+    private void loadCatalog() {
+        long start = System.currentTimeMillis();
+        catalogCache = new LinkedHashMap<>();
+        catalogIndex = new CatalogIndex();
 
         try {
-            SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-            String foldersJson = prefs.getString(KEY_FOLDERS, "[]");
-            JSONArray foldersArray = new JSONArray(foldersJson);
+            SharedPreferences prefs = getPrefs();
+            splitLegacyCatalog(prefs);
+            JSONArray ids = new JSONArray(prefs.getString(KEY_FOLDER_IDS, "[]"));
+            SharedPreferences.Editor measured = null;
+
+            for (int i = 0; i < ids.length(); i++) {
+                String json = prefs.getString(KEY_FOLDER_PREFIX + ids.getString(i), null);
+                if (json == null) {
+                    continue;
+                }
+                try {
+                    JSONObject folderObj = new JSONObject(json);
+                    DocumentFolder folder = fromRecord(folderObj);
+                    long sizeBytes;
+                    if (folderObj.has("sizeBytes")) {
+                        sizeBytes = folderObj.getLong("sizeBytes");
+                    } else {
+                        // Saved before sizes were stored: measure once and store the size, so
+                        // the next start doesn't walk the folder again. A record that failed
+                        // to upgrade is left for the sweep and measured again next time.
+                        sizeBytes = getFolderSizeBytes(folder.getUniqueId());
+                        if (!migrator.needsUpgrade(folderObj)) {
+                            folderObj.put("sizeBytes", sizeBytes);
+                            if (measured == null) {
+                                measured = prefs.edit();
+                            }
+                            measured.putString(KEY_FOLDER_PREFIX + folder.getUniqueId(), folderObj.toString());
+                        }
+                    }
+                    catalogCache.put(folder.getUniqueId(), folder);
+                    catalogIndex.put(FolderSummary.from(folder, sizeBytes));
+                } catch (JSONException e) {
+                    Log.e(TAG, "Error loading folder " + ids.getString(i) + ": " + e.getMessage());
+                }
+            }
+            if (measured != null) {
+                measured.apply();
+            }
 
-            Log.d(TAG, "Loading " + foldersArray.length() + " folders from SharedPreferences");
+        } catch (JSONException e) {
+            Log.e(TAG, "Error loading folders: " + e.getMessage());
+        }
 
-            for (int i = 0; i < foldersArray.length(); i++) {
-                JSONObject folderObj = foldersArray.getJSONObject(i);
+        Log.d(TAG, "Loaded " + catalogCache.size() + " folders in " + (System.currentTimeMillis() - start) + " ms");
+    }
 
-                DocumentFolder folder = new DocumentFolder();
-                // Properly set the uniqueId
-                folder.setUniqueId(folderObj.getString("id"));
-                folder.setName(folderObj.getString("name"));
+    // Move a catalog stored as one JSON array to a key per folder. Records keep their
+    // version and order, so a migration cursor into the old array still points at the
+    // same record. Callers hold catalogLock.
+    private static void splitLegacyCatalog(SharedPreferences prefs) throws JSONException {
+        String legacyJson = prefs.getString(KEY_LEGACY_FOLDERS, null);
+        if (legacyJson == null) {
+            return;
+        }
 
-                // Get documents array
-                JSONArray docsArray = folderObj.getJSONArray("documents");
-                for (int j = 0; j < docsArray.length(); j++) {
-                    JSONObject docObj = docsArray.getJSONObject(j);
-                    Uri uri = Uri.parse(docObj.getString("uri"));
+        JSONArray legacy = new JSONArray(legacyJson);
+        JSONArray ids = new JSONArray();
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int i = 0; i < legacy.length(); i++) {
+            JSONObject record = legacy.getJSONObject(i);
+            String id = record.getString("id");
+            editor.putString(KEY_FOLDER_PREFIX + id, record.toString());
+            ids.put(id);
+        }
+        editor.putString(KEY_FOLDER_IDS, ids.toString());
+        editor.remove(KEY_LEGACY_FOLDERS);
+        editor.commit();
+        Log.d(TAG, "Split " + ids.length() + " folder records out of the legacy catalog");
+    }
 
-                    ScannedDocument document = new ScannedDocument(uri);
-                    document.setName(docObj.getString("name"));
-                    folder.addDocument(document);
+    // Upgrade stored records to the current version on a background thread, a slice at a
+    // time. Safe to call on every start; the sweep stops at once when there is nothing to
+    // do and picks up where an interrupted sweep stopped. Checking whether there is work
+    // happens on that thread too, so the calling thread, the main thread at startup,
+    // never reads the catalog or waits for its lock.
+    public void scheduleMigrationSweep() {
+        synchronized (migrationLock) {
+            if (migrationScheduled) {
+                return;
+            }
+            migrationScheduled = true;
+        }
+
+        final CatalogSweeper sweeper = new CatalogSweeper(migrator, new PreferencesStore(context), MIGRATION_SLICE);
+        final long start = System.currentTimeMillis();
+        sweeper.sweepOn(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command, "catalog-migration");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.start();
+            }
+        }, MIGRATION_PAUSE_MS, new CatalogSweeper.Callback() {
+            @Override
+            public void onSweepFinished(Exception error) {
+                synchronized (migrationLock) {
+                    migrationScheduled = false;
+                }
+                if (error != null) {
+                    Log.e(TAG, "Catalog migration stopped", error);
+                } else if (sweeper.getMigrated() > 0 || sweeper.getFailed() > 0) {
+                    Log.d(TAG, "Migrated " + sweeper.getMigrated() + " folder records ("
+                            + sweeper.getFailed() + " failed) in " + (System.currentTimeMillis() - start) + " ms");
                 }
+            }
+        });
+    }
+
+    // The catalog in SharedPreferences as the sweeper sees it. A slice's records and its
+    // cursor go into one edit, which is written to disk as a whole, so a crash loses
+    // neither or both. apply() writes it in the background, so the lock is never held
+    // across a disk write. The finished version goes to the small meta file. Both files
+    // are only opened once the sweep thread first reads the store.
+    private static class PreferencesStore implements CatalogSweeper.Store {
+        private final Context context;
+        private SharedPreferences prefs;
+        private SharedPreferences meta;
+
+        // The id list only changes when folders are added, keep it parsed between slices
+        private String idsJson;
+        private List<String> ids;
+
+        PreferencesStore(Context context) {
+            this.context = context;
+        }
 
-                folders.add(folder);
-                Log.d(TAG, "Loaded folder: " + folder.getName() + " with ID: " + folder.getUniqueId());
+        private SharedPreferences prefs() {
+            if (prefs == null) {
+                prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
             }
+            return prefs;
+        }
 
-        } catch (JSONException e) {
-            Log.e(TAG, "Error loading folders: " + e.getMessage());
+        private SharedPreferences meta() {
+            if (meta == null) {
+                meta = context.getSharedPreferences(META_PREF_NAME, Context.MODE_PRIVATE);
+            }
+            return meta;
+        }
+
+        @Override
+        public Object getLock() {
+            return catalogLock;
+        }
+
+        @Override
+        public List<String> readIds() throws JSONException {
+            if (prefs().contains(KEY_LEGACY_FOLDERS)) {
+                synchronized (catalogLock) {
+                    splitLegacyCatalog(prefs());
+                }
+            }
+            String json = prefs().getString(KEY_FOLDER_IDS, null);
+            if (json == null) {
+                return null;
+            }
+            if (!json.equals(idsJson)) {
+                JSONArray array = new JSONArray(json);
+                ids = new ArrayList<>(array.length());
+                for (int i = 0; i < array.length(); i++) {
+                    ids.add(array.getString(i));
+                }
+                idsJson = json;
+            }
+            return ids;
+        }
+
+        @Override
+        public String readRecord(String id) {
+            return prefs().getString(KEY_FOLDER_PREFIX + id, null);
+        }
+
+        @Override
+        public int readCursor() {
+            return prefs().getInt(KEY_MIGRATION_CURSOR, 0);
         }
 
-        return folders;
+        @Override
+        public boolean write(Map<String, String> records, int cursor) {
+            SharedPreferences.Editor editor = prefs().edit();
+            for (Map.Entry<String, String> record : records.entrySet()) {
+                editor.putString(KEY_FOLDER_PREFIX + record.getKey(), record.getValue());
+            }
+            editor.putInt(KEY_MIGRATION_CURSOR, cursor).apply();
+            return true;
+        }
+
+        @Override
+        public void markComplete(int version) {
+            // Cursor first: dying in between only means the next start sweeps once more
+            prefs().edit().remove(KEY_MIGRATION_CURSOR).commit();
+            meta().edit().putInt(KEY_CATALOG_VERSION, version).commit();
+        }
+
+        @Override
+        public int readCompleteVersion() {
+            if (!meta().contains(KEY_CATALOG_VERSION) && prefs().contains(KEY_CATALOG_VERSION)) {
+                // Older builds kept the version in the catalog file, move it over once
+                meta().edit().putInt(KEY_CATALOG_VERSION, prefs().getInt(KEY_CATALOG_VERSION, 0)).commit();
+                prefs().edit().remove(KEY_CATALOG_VERSION).apply();
+            }
+            return meta().getInt(KEY_CATALOG_VERSION, 0);
+        }
+    }
+
+    private static ImageEnhancer.Mode parseEnhancementMode(String name) {
+        try {
+            return ImageEnhancer.Mode.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return ImageEnhancer.Mode.ORIGINAL;
+        }
+    }
+
+    // Read a sorted, filtered page of folders, served from the in-memory indexes
+    public List<DocumentFolder> queryFolders(CatalogQuery query) {
+        List<DocumentFolder> result = new ArrayList<>();
+
+        synchronized (catalogLock) {
+            ensureCatalogLoaded();
+            for (FolderSummary summary : catalogIndex.query(query)) {
+                DocumentFolder folder = catalogCache.get(summary.getId());
+                if (folder != null) {
+                    result.add(folder);
+                }
+            }
+        }
+
+        return result;
     }
 
-    // Get a specific folder by ID
-    public DocumentFolder getFolderById(String folderId) {
-        List<DocumentFolder> folders = loadFolders();
-        for (DocumentFolder folder : folders) {
-            if (folder.getUniqueId().equals(folderId)) {
+    // Same as queryFolders, but the catalog is loaded and queried on a background thread
+    // and the result is handed back on the main thread
+    public void queryFoldersAsync(final CatalogQuery query, final QueryCallback callback) {
+        catalogExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<DocumentFolder> folders = queryFolders(query);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFoldersLoaded(folders);
+                    }
+                });
+            }
+        });
+    }
+
+    // Get a specific folder by ID. The lookup runs on the catalog thread, after any
+    // updateFolder still queued there, and this waits for it: call it from a background
+    // thread only. The main thread uses getFolderByIdAsync.
+    public DocumentFolder getFolderById(final String folderId) {
+        try {
+            return catalogExecutor.submit(new Callable<DocumentFolder>() {
+                @Override
+                public DocumentFolder call() {
+                    return findFolder(folderId);
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error looking up folder " + folderId, e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // Same as getFolderById, with the result handed back on the main thread
+    public void getFolderByIdAsync(final String folderId, final FolderCallback callback) {
+        catalogExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DocumentFolder folder = findFolder(folderId);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFolderLoaded(folder);
+                    }
+                });
+            }
+        });
+    }
+
+    private DocumentFolder findFolder(String folderId) {
+        synchronized (catalogLock) {
+            ensureCatalogLoaded();
+            DocumentFolder folder = catalogCache.get(folderId);
+            if (folder != null) {
                 Log.d(TAG, "Found folder with ID: " + folderId);
                 return folder;
             }
@@ -120,32 +521,78 @@ public class DocumentStorageManager {
         return null;
     }
 
-    // Update a specific folder
-    public void updateFolder(DocumentFolder folder) {
-        if (folder == null || folder.getUniqueId() == null) {
-            Log.e(TAG, "Cannot update null folder or folder with null ID");
-            return;
+    // Parse the stored catalog once per process. Callers hold catalogLock.
+    private void ensureCatalogLoaded() {
+        if (catalogCache == null) {
+            loadCatalog();
         }
+    }
 
-        List<DocumentFolder> folders = loadFolders();
-        boolean folderFound = false;
-
-        for (int i = 0; i < folders.size(); i++) {
-            DocumentFolder existingFolder = folders.get(i);
-            if (existingFolder.getUniqueId().equals(folder.getUniqueId())) {
-                Log.d(TAG, "Updating existing folder with ID: " + folder.getUniqueId());
-                folders.set(i, folder);
-                folderFound = true;
-                break;
+    // Bytes stored on disk for a folder (its PDF and any other files we keep for it)
+    private long getFolderSizeBytes(String folderId) {
+        File[] files = new File(context.getFilesDir(), folderId).listFiles();
+        long total = 0;
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
             }
         }
+        return total;
+    }
 
-        if (!folderFound) {
-            Log.d(TAG, "Adding new folder with ID: " + folder.getUniqueId());
-            folders.add(folder);
+    // Save a specific folder. Call it after the folder's files have been written. The
+    // record is taken from the folder here, on the caller's thread; measuring its size on
+    // disk for the size sort and filter and storing it happen on the catalog thread.
+    public void updateFolder(final DocumentFolder folder) {
+        if (folder == null || folder.getUniqueId() == null) {
+            Log.e(TAG, "Cannot update null folder or folder with null ID");
+            return;
         }
 
-        saveFolders(folders);
+        final String folderId = folder.getUniqueId();
+        final String name = folder.getName();
+        final long createdAt = folder.getCreatedAt();
+        final int pageCount = folder.getDocuments().size();
+        final JSONObject record;
+        try {
+            record = toRecord(folder, 0);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error saving folder " + folderId + ": " + e.getMessage());
+            return;
+        }
+
+        catalogExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long sizeBytes = getFolderSizeBytes(folderId);
+                synchronized (catalogLock) {
+                    ensureCatalogLoaded();
+
+                    boolean added = !catalogCache.containsKey(folderId);
+                    if (added) {
+                        Log.d(TAG, "Adding new folder with ID: " + folderId);
+                    } else {
+                        Log.d(TAG, "Updating existing folder with ID: " + folderId);
+                    }
+
+                    // Replacing a key keeps its position, new folders go to the end as before
+                    catalogCache.put(folderId, folder);
+                    catalogIndex.put(new FolderSummary(folderId, name, createdAt, pageCount, sizeBytes));
+
+                    try {
+                        record.put("sizeBytes", sizeBytes);
+                        SharedPreferences.Editor editor = getPrefs().edit();
+                        editor.putString(KEY_FOLDER_PREFIX + folderId, record.toString());
+                        if (added) {
+                            editor.putString(KEY_FOLDER_IDS, new JSONArray(catalogCache.keySet()).toString());
+                        }
+                        editor.apply();
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Error saving folder " + folderId + ": " + e.getMessage());
+                    }
+                }
+            }
+        });
     }
 
     // Save PDF file
@@ -173,6 +620,42 @@ public class DocumentStorageManager {
         return pdfFile;
     }
 
+    // Where a folder's PDF lives, whether or not it has been written yet. A folder that
+    // already has a PDF keeps it under the name it was first written with.
+    public File getPdfTarget(String folderId, String fileName) {
+        File existing = getPdfFile(folderId);
+        if (existing != null) {
+            return existing;
+        }
+        File folderDir = new File(context.getFilesDir(), folderId);
+        if (!folderDir.exists()) {
+            folderDir.mkdirs();
+        }
+        return new File(folderDir, fileName + ".pdf");
+    }
+
+    // Directory for files that belong to a folder (PDF and enhanced page images)
+    public File getFolderDir(String folderId) {
+        return new File(context.getFilesDir(), folderId);
+    }
+
+    // The folder's PDF, found by folder id alone. Its file name is the folder name at the
+    // time it was written, which renaming the folder doesn't change. Null when there is none.
+    public File getPdfFile(String folderId) {
+        if (folderId == null) {
+            return null;
+        }
+        File[] files = getFolderDir(folderId).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(".pdf")) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
     // Get PDF file for a folder
     public File getPdfFile(String folderId, String fileName) {
         if (folderId == null || fileName == null) {
@@ -188,7 +671,14 @@ public class DocumentStorageManager {
             return pdfFile;
         }
 
-        Log.e(TAG, "PDF file not found: " + pdfFile.getAbsolutePath());
+        // Written before the folder was renamed
+        pdfFile = getPdfFile(folderId);
+        if (pdfFile != null) {
+            Log.d(TAG, "Found PDF file: " + pdfFile.getAbsolutePath());
+            return pdfFile;
+        }
+
+        Log.e(TAG, "PDF file not found for folder: " + folderId);
         return null;
     }
-}
\ No newline at end of file
+}
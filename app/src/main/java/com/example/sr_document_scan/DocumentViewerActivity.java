@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.InputType;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -13,6 +14,7 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -26,15 +28,38 @@ import androidx.core.content.FileProvider;
 import com.bumptech.glide.Glide;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 public class DocumentViewerActivity extends AppCompatActivity {
 
+    private ScrollView documentsScroll;
     private LinearLayout documentsContainer;
     private DocumentFolder currentFolder;
     private String folderId;
     private String folderName;
     private DocumentStorageManager storageManager;
+    private FolderPageEditor pageEditor;
+    private PageEnhancer pageEnhancer;
+    private ScrollPrefetchHelper pagePrefetcher;
+    private ScrollPrefetchHelper fullscreenPrefetcher;
+    private boolean editInProgress;
+
+    // Page edits run in the background, the list is redrawn once one has been saved
+    private final FolderPageEditor.Callback pageEditCallback = new FolderPageEditor.Callback() {
+        @Override
+        public void onPagesEdited(DocumentFolder folder, Exception error) {
+            editInProgress = false;
+            if (isDestroyed()) {
+                return;
+            }
+            if (error != null) {
+                Toast.makeText(getApplicationContext(), "Could not update PDF: " + error.getMessage(),
+                        Toast.LENGTH_LONG).show();
+            }
+            displayDocuments(); // Refresh the view
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,6 +68,8 @@ public class DocumentViewerActivity extends AppCompatActivity {
 
         // Initialize storage manager
         storageManager = new DocumentStorageManager(this);
+        pageEditor = new FolderPageEditor(this, storageManager);
+        pageEnhancer = new PageEnhancer(this, storageManager);
 
         // Set up toolbar
         Toolbar toolbar = findViewById(R.id.toolbar);
@@ -56,6 +83,7 @@ public class DocumentViewerActivity extends AppCompatActivity {
 
         getSupportActionBar().setTitle(folderName);
 
+        documentsScroll = findViewById(R.id.documents_scroll);
         documentsContainer = findViewById(R.id.documents_container);
 
         // Load the folder
@@ -63,20 +91,55 @@ public class DocumentViewerActivity extends AppCompatActivity {
     }
 
     private void loadFolder() {
-        // Load folder from storage
-        currentFolder = storageManager.getFolderById(folderId);
-
-        if (currentFolder != null) {
-            // Display the documents
-            displayDocuments();
-        } else {
-            Toast.makeText(this, "Folder not found", Toast.LENGTH_SHORT).show();
-            finish();
+        // Load folder from storage, off the main thread in case the catalog isn't loaded yet
+        storageManager.getFolderByIdAsync(folderId, new DocumentStorageManager.FolderCallback() {
+            @Override
+            public void onFolderLoaded(DocumentFolder folder) {
+                if (isDestroyed()) {
+                    return;
+                }
+                currentFolder = folder;
+
+                if (currentFolder != null) {
+                    // Display the documents
+                    displayDocuments();
+                    invalidateOptionsMenu();
+                } else {
+                    Toast.makeText(DocumentViewerActivity.this, "Folder not found", Toast.LENGTH_SHORT).show();
+                    finish();
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        releasePrefetchers();
+        super.onDestroy();
+    }
+
+    private void releasePrefetchers() {
+        if (pagePrefetcher != null) {
+            pagePrefetcher.detach();
+            pagePrefetcher = null;
+        }
+        if (fullscreenPrefetcher != null) {
+            fullscreenPrefetcher.detach();
+            fullscreenPrefetcher = null;
+        }
+    }
+
+    private List<Uri> getPageUris() {
+        List<Uri> uris = new ArrayList<>();
+        for (ScannedDocument doc : currentFolder.getDocuments()) {
+            uris.add(doc.getImageUri());
         }
+        return uris;
     }
 
     private void displayDocuments() {
         documentsContainer.removeAllViews();
+        releasePrefetchers();
         LayoutInflater inflater = getLayoutInflater();
 
         List<ScannedDocument> documents = currentFolder.getDocuments();
@@ -89,7 +152,19 @@ public class DocumentViewerActivity extends AppCompatActivity {
             return;
         }
 
-        for (ScannedDocument doc : documents) {
+        // Rows are 200dp tall (document_item_detailed), images are bound as rows scroll into view
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        int rowHeight = (int) (200 * metrics.density);
+        final ScrollPrefetchHelper prefetcher = new ScrollPrefetchHelper(Glide.with(this),
+                ImageCacheGovernor.get(this), getPageUris(),
+                ImageCacheGovernor.thumbnailOptions().centerCrop(),
+                metrics.widthPixels, rowHeight, 2, rowHeight * 2f);
+        final List<ImageView> imageViews = new ArrayList<>();
+
+        for (int i = 0; i < documents.size(); i++) {
+            final ScannedDocument doc = documents.get(i);
+            final int position = i;
+
             // Inflate a custom layout for each document
             View documentView = inflater.inflate(R.layout.document_item_detailed, documentsContainer, false);
 
@@ -103,21 +178,28 @@ public class DocumentViewerActivity extends AppCompatActivity {
             nameView.setText(doc.getName());
             timestampView.setText(doc.getTimestamp());
 
-            // Load the image
-            Glide.with(this)
-                    .load(doc.getImageUri())
-                    .into(imageView);
+            imageViews.add(imageView);
 
             // Set click listener for edit button
-            editButton.setOnClickListener(v -> showEditDocumentDialog(doc));
+            editButton.setOnClickListener(v -> showPageActionsDialog(position));
 
             // Set click listener for document to view full-screen
-            docCard.setOnClickListener(v -> viewDocument(doc));
+            docCard.setOnClickListener(v -> viewDocument(position, 0));
 
             // Add the view to the container
             documentsContainer.addView(documentView);
         }
 
+        pagePrefetcher = prefetcher;
+        prefetcher.attach(documentsScroll, documentsContainer, position -> {
+            ImageView imageView = imageViews.get(position);
+            imageView.setRotation(documents.get(position).getRotation());
+            Glide.with(this)
+                    .load(documents.get(position).getImageUri())
+                    .apply(prefetcher.getRequestOptions())
+                    .into(imageView);
+        });
+
         // Add PDF viewer button if PDF exists
         File pdfFile = storageManager.getPdfFile(currentFolder.getUniqueId(), currentFolder.getName());
         if (pdfFile != null && pdfFile.exists()) {
@@ -144,6 +226,56 @@ public class DocumentViewerActivity extends AppCompatActivity {
         }
     }
 
+    private void showPageActionsDialog(final int position) {
+        final int pageCount = currentFolder.getDocuments().size();
+        String[] actions = {"Rename", "Move up", "Move down", "Rotate", "Delete"};
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(currentFolder.getDocuments().get(position).getName());
+        builder.setItems(actions, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                if (which == 0) {
+                    showEditDocumentDialog(currentFolder.getDocuments().get(position));
+                    return;
+                }
+                // Positions come from the list on screen, wait until it shows the last edit
+                if (editInProgress) {
+                    Toast.makeText(getApplicationContext(), "Still saving the last change",
+                            Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                switch (which) {
+                    case 1:
+                        if (position > 0) {
+                            editInProgress = true;
+                            pageEditor.movePage(currentFolder, position, position - 1, pageEditCallback);
+                        }
+                        break;
+                    case 2:
+                        if (position < pageCount - 1) {
+                            editInProgress = true;
+                            pageEditor.movePage(currentFolder, position, position + 1, pageEditCallback);
+                        }
+                        break;
+                    case 3:
+                        editInProgress = true;
+                        pageEditor.rotatePage(currentFolder, position, 90, pageEditCallback);
+                        break;
+                    case 4:
+                        editInProgress = true;
+                        pageEditor.deletePage(currentFolder, position, pageEditCallback);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.show();
+    }
+
     private void showEditDocumentDialog(ScannedDocument document) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Edit Document Name");
@@ -177,7 +309,19 @@ public class DocumentViewerActivity extends AppCompatActivity {
         builder.show();
     }
 
-    private void viewDocument(ScannedDocument document) {
+    // delta is -1/+1 when stepping from the previous page, 0 when opened from the list
+    private void viewDocument(int position, int delta) {
+        List<ScannedDocument> documents = currentFolder.getDocuments();
+        ScannedDocument document = documents.get(position);
+
+        if (fullscreenPrefetcher == null) {
+            DisplayMetrics metrics = getResources().getDisplayMetrics();
+            fullscreenPrefetcher = new ScrollPrefetchHelper(Glide.with(this),
+                    ImageCacheGovernor.get(this), getPageUris(),
+                    ImageCacheGovernor.fullSizeOptions().fitCenter(),
+                    metrics.widthPixels, metrics.heightPixels, 4, 2f);
+        }
+
         // Open document in full-screen viewer
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle(document.getName());
@@ -185,12 +329,31 @@ public class DocumentViewerActivity extends AppCompatActivity {
         View view = getLayoutInflater().inflate(R.layout.document_fullscreen, null);
         ImageView imageView = view.findViewById(R.id.fullscreen_image);
 
+        imageView.setRotation(document.getRotation());
         Glide.with(this)
                 .load(document.getImageUri())
+                .apply(fullscreenPrefetcher.getRequestOptions())
                 .into(imageView);
+        fullscreenPrefetcher.onPageShown(position, delta);
 
         builder.setView(view);
         builder.setPositiveButton("Close", null);
+        if (position > 0) {
+            builder.setNeutralButton("Previous", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    viewDocument(position - 1, -1);
+                }
+            });
+        }
+        if (position < documents.size() - 1) {
+            builder.setNegativeButton("Next", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    viewDocument(position + 1, 1);
+                }
+            });
+        }
         builder.show();
     }
 
@@ -200,6 +363,15 @@ public class DocumentViewerActivity extends AppCompatActivity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem straighten = menu.findItem(R.id.action_straighten_pages);
+        if (straighten != null && currentFolder != null) {
+            straighten.setChecked(currentFolder.isDeskew());
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         int id = item.getItemId();
@@ -207,14 +379,68 @@ public class DocumentViewerActivity extends AppCompatActivity {
         if (id == android.R.id.home) {
             finish();
             return true;
+        } else if (currentFolder == null) {
+            // Still loading
+            return true;
         } else if (id == R.id.action_rename_folder) {
             showRenameFolderDialog();
             return true;
+        } else if (id == R.id.action_enhance_pages) {
+            showEnhanceDialog();
+            return true;
+        } else if (id == R.id.action_straighten_pages) {
+            currentFolder.setDeskew(!currentFolder.isDeskew());
+            item.setChecked(currentFolder.isDeskew());
+            enhancePages();
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    private void showEnhanceDialog() {
+        final ImageEnhancer.Mode[] modes = ImageEnhancer.Mode.values();
+        String[] labels = {"Original", "Grayscale", "Contrast", "Black & White"};
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Enhance Pages");
+        builder.setSingleChoiceItems(labels, currentFolder.getEnhancementMode().ordinal(),
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        currentFolder.setEnhancementMode(modes[which]);
+                        dialog.dismiss();
+                        enhancePages();
+                    }
+                });
+        builder.setNegativeButton("Cancel", null);
+        builder.show();
+    }
+
+    // Apply the folder's enhancement settings to its pages and PDF in the background
+    private void enhancePages() {
+        storageManager.updateFolder(currentFolder);
+        if (!PageEnhancer.needsEnhancement(currentFolder)) {
+            return;
+        }
+
+        Toast.makeText(this, "Enhancing pages...", Toast.LENGTH_SHORT).show();
+        pageEnhancer.enhance(currentFolder, new PageEnhancer.Callback() {
+            @Override
+            public void onEnhanced(DocumentFolder folder, boolean success) {
+                if (isDestroyed()) {
+                    return;
+                }
+                if (success) {
+                    displayDocuments(); // Refresh the view
+                } else {
+                    Toast.makeText(getApplicationContext(), "Could not enhance pages",
+                            Toast.LENGTH_LONG).show();
+                }
+            }
+        });
+    }
+
     private void showRenameFolderDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Rename Folder");
@@ -0,0 +1,184 @@
+package com.example.sr_document_scan;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// Page operations on a folder that keep its PDF in step. The PDF is edited in place with
+// an incremental update, so a one-page change costs the same on a 2 or a 200 page file.
+// Edits run on the FolderWorker, one at a time with ingest and enhancement. The PDF is
+// written first and the folder only changes once that worked, so a failed edit leaves
+// both as they were.
+public class FolderPageEditor {
+    private static final String TAG = "FolderPageEditor";
+
+    public interface Callback {
+        // Called on the main thread, error is null when the edit was saved
+        void onPagesEdited(DocumentFolder folder, @Nullable Exception error);
+    }
+
+    // The PDF half of an edit, on the worker
+    private interface PdfEdit {
+        void apply(IncrementalPdf pdf) throws IOException;
+    }
+
+    private final Context context;
+    private final DocumentStorageManager storageManager;
+
+    public FolderPageEditor(@NonNull Context context, @NonNull DocumentStorageManager storageManager) {
+        this.context = context.getApplicationContext();
+        this.storageManager = storageManager;
+    }
+
+    public void movePage(final DocumentFolder folder, final int from, final int to, Callback callback) {
+        edit(folder, new PdfEdit() {
+            @Override
+            public void apply(IncrementalPdf pdf) {
+                pdf.movePage(from, to);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                folder.movePage(from, to);
+            }
+        }, callback);
+    }
+
+    public void deletePage(final DocumentFolder folder, final int index, Callback callback) {
+        edit(folder, new PdfEdit() {
+            @Override
+            public void apply(IncrementalPdf pdf) {
+                pdf.removePage(index);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                ScannedDocument removed = folder.removePage(index);
+
+                // Images copied into or enhanced in the folder's directory go with the page
+                String folderPath = storageManager.getFolderDir(folder.getUniqueId()).getAbsolutePath();
+                for (Uri uri : new Uri[]{removed.getImageUri(), removed.getOriginalUri()}) {
+                    if ("file".equals(uri.getScheme()) && uri.getPath() != null && uri.getPath().startsWith(folderPath)) {
+                        new File(uri.getPath()).delete();
+                    }
+                }
+            }
+        }, callback);
+    }
+
+    public void rotatePage(final DocumentFolder folder, final int index, final int degrees, Callback callback) {
+        edit(folder, new PdfEdit() {
+            @Override
+            public void apply(IncrementalPdf pdf) {
+                pdf.rotatePage(index, degrees);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                folder.rotatePage(index, degrees);
+            }
+        }, callback);
+    }
+
+    // Insert JPEG pages starting at index, written to the PDF as a single update
+    public void insertPages(final DocumentFolder folder, final int index, final List<Uri> imageUris,
+                            Callback callback) {
+        edit(folder, new PdfEdit() {
+            @Override
+            public void apply(IncrementalPdf pdf) throws IOException {
+                for (int i = 0; i < imageUris.size(); i++) {
+                    pdf.insertJpegPage(index + i, readBytes(imageUris.get(i)));
+                }
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < imageUris.size(); i++) {
+                    folder.insertDocument(index + i, new ScannedDocument(imageUris.get(i)));
+                }
+            }
+        }, callback);
+    }
+
+    private void edit(final DocumentFolder folder, final PdfEdit pdfEdit, final Runnable folderEdit,
+                      final Callback callback) {
+        FolderWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                Exception error = null;
+                try {
+                    IncrementalPdf pdf = openPdf(folder);
+                    if (pdf != null) {
+                        pdfEdit.apply(pdf);
+                        pdf.commit();
+                    }
+                    FolderWorker.callOnMain(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            folderEdit.run();
+                            storageManager.updateFolder(folder);
+                            return null;
+                        }
+                    });
+                } catch (Exception e) {
+                    Log.e(TAG, "Editing folder " + folder.getUniqueId() + " failed: " + e.getMessage());
+                    error = e;
+                }
+
+                final Exception result = error;
+                FolderWorker.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPagesEdited(folder, result);
+                    }
+                });
+            }
+        });
+    }
+
+    // The folder's PDF, or null when the folder has none. Throws when the PDF no longer
+    // matches the page list, the edit is refused rather than applied to one of them only.
+    // On the worker, where nothing else changes the page list while we run.
+    private IncrementalPdf openPdf(DocumentFolder folder) throws IOException {
+        File pdfFile = storageManager.getPdfFile(folder.getUniqueId(), folder.getName());
+        if (pdfFile == null) {
+            return null;
+        }
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        if (pdf.getPageCount() != folder.getDocuments().size()) {
+            throw new IOException("PDF has " + pdf.getPageCount() + " pages but folder has "
+                    + folder.getDocuments().size());
+        }
+        return pdf;
+    }
+
+    private byte[] readBytes(Uri uri) throws IOException {
+        InputStream inputStream = context.getContentResolver().openInputStream(uri);
+        if (inputStream == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return out.toByteArray();
+    }
+}
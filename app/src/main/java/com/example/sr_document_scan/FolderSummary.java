@@ -0,0 +1,52 @@
+package com.example.sr_document_scan;
+
+import java.util.Locale;
+
+// Immutable snapshot of the fields the catalog can be sorted and filtered on.
+// DocumentFolder is mutable, so the sorted indexes only ever hold these.
+public class FolderSummary {
+    private final String id;
+    private final String name;
+    private final String nameLower;
+    private final long createdAt;
+    private final int pageCount;
+    private final long sizeBytes;
+
+    public FolderSummary(String id, String name, long createdAt, int pageCount, long sizeBytes) {
+        this.id = id;
+        this.name = name != null ? name : "";
+        this.nameLower = this.name.toLowerCase(Locale.ROOT);
+        this.createdAt = createdAt;
+        this.pageCount = pageCount;
+        this.sizeBytes = sizeBytes;
+    }
+
+    public static FolderSummary from(DocumentFolder folder, long sizeBytes) {
+        return new FolderSummary(folder.getUniqueId(), folder.getName(), folder.getCreatedAt(),
+                folder.getDocuments().size(), sizeBytes);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNameLower() {
+        return nameLower;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+}
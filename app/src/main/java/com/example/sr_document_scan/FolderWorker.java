@@ -0,0 +1,50 @@
+package com.example.sr_document_scan;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+// The one background thread that changes folder files. Page edits, enhancement and scan
+// ingest all append to or replace a folder's PDF; each one reads the file, works out
+// where to write and writes, so they must not overlap. Running them here one after the
+// other, each finishing its main thread part before the next starts, keeps every PDF
+// in step with its folder's page list.
+public final class FolderWorker {
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private FolderWorker() {
+    }
+
+    public static Executor getExecutor() {
+        return executor;
+    }
+
+    public static void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public static void postToMain(Runnable task) {
+        mainHandler.post(task);
+    }
+
+    // Run on the main thread, where folders are changed, and wait for the result.
+    // Only call this from the worker; the main thread never waits for the worker.
+    public static <T> T callOnMain(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        mainHandler.post(task);
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.sr_document_scan;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.request.RequestOptions;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// App-wide owner of the image cache budgets. ScannerGlideModule sizes Glide's caches from
+// the policy and registers them here; trim callbacks then shrink them one step at a time.
+public class ImageCacheGovernor implements ComponentCallbacks2 {
+
+    // The parts of Glide's MemoryCache and BitmapPool we resize
+    public interface Cache {
+        void setSizeMultiplier(float multiplier);
+
+        void clearMemory();
+    }
+
+    public interface Listener {
+        void onMemoryBudgetChanged(long memoryCacheBytes);
+    }
+
+    private static ImageCacheGovernor instance;
+
+    private final ImageCachePolicy policy;
+    private final List<Cache> caches = new CopyOnWriteArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile float multiplier = 1f;
+
+    public ImageCacheGovernor(@NonNull ImageCachePolicy policy) {
+        this.policy = policy;
+    }
+
+    public static synchronized ImageCacheGovernor get(@NonNull Context context) {
+        if (instance == null) {
+            ActivityManager am = (ActivityManager) context.getApplicationContext()
+                    .getSystemService(Context.ACTIVITY_SERVICE);
+            instance = new ImageCacheGovernor(
+                    ImageCachePolicy.forDevice(am.getMemoryClass(), am.isLowRamDevice()));
+        }
+        return instance;
+    }
+
+    // Thumbnails and list rows don't need alpha or full color depth, half the bytes per pixel
+    public static RequestOptions thumbnailOptions() {
+        return new RequestOptions().format(DecodeFormat.PREFER_RGB_565);
+    }
+
+    public static RequestOptions fullSizeOptions() {
+        return new RequestOptions().format(DecodeFormat.PREFER_ARGB_8888);
+    }
+
+    public ImageCachePolicy getPolicy() {
+        return policy;
+    }
+
+    public void addCache(@NonNull Cache cache) {
+        caches.add(cache);
+        cache.setSizeMultiplier(multiplier);
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public float getMultiplier() {
+        return multiplier;
+    }
+
+    // Memory cache bytes we currently allow, after any trimming
+    public long getMemoryCacheBudget() {
+        return (long) (policy.getMemoryCacheBytes() * (double) multiplier);
+    }
+
+    public long getBitmapPoolBudget() {
+        return (long) (policy.getBitmapPoolBytes() * (double) multiplier);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Only ever shrink here, a milder signal after a harsher one keeps the smaller size
+        float target = policy.multiplierForTrimLevel(level);
+        if (target < multiplier) {
+            applyMultiplier(target);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        applyMultiplier(0f);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        // Budgets don't depend on configuration
+    }
+
+    // Called when the app comes back to the foreground, restores the full budgets
+    public void onForeground() {
+        if (multiplier < 1f) {
+            applyMultiplier(1f);
+        }
+    }
+
+    private synchronized void applyMultiplier(float newMultiplier) {
+        multiplier = newMultiplier;
+        for (Cache cache : caches) {
+            if (newMultiplier == 0f) {
+                cache.clearMemory();
+            }
+            cache.setSizeMultiplier(newMultiplier);
+        }
+        long budget = getMemoryCacheBudget();
+        for (Listener listener : listeners) {
+            listener.onMemoryBudgetChanged(budget);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.sr_document_scan;
+
+import android.content.ComponentCallbacks2;
+
+// Image cache budgets for this device, and how far to shrink them for each trim level.
+// Kept free of Android runtime calls so the numbers can be checked in unit tests.
+public class ImageCachePolicy {
+    private static final long MB = 1024L * 1024L;
+
+    private final long memoryCacheBytes;
+    private final long bitmapPoolBytes;
+    private final long diskCacheBytes;
+
+    public ImageCachePolicy(long memoryCacheBytes, long bitmapPoolBytes, long diskCacheBytes) {
+        this.memoryCacheBytes = memoryCacheBytes;
+        this.bitmapPoolBytes = bitmapPoolBytes;
+        this.diskCacheBytes = diskCacheBytes;
+    }
+
+    // memoryClassMb is ActivityManager.getMemoryClass(), the heap we are allowed to use
+    public static ImageCachePolicy forDevice(int memoryClassMb, boolean lowRamDevice) {
+        long heap = Math.max(16, memoryClassMb) * MB;
+        if (lowRamDevice) {
+            return new ImageCachePolicy(heap / 12, heap / 24, 50 * MB);
+        }
+        return new ImageCachePolicy(heap / 6, heap / 10, 250 * MB);
+    }
+
+    public long getMemoryCacheBytes() {
+        return memoryCacheBytes;
+    }
+
+    public long getBitmapPoolBytes() {
+        return bitmapPoolBytes;
+    }
+
+    public long getDiskCacheBytes() {
+        return diskCacheBytes;
+    }
+
+    // Fraction of the full budget we may keep at the given onTrimMemory() level
+    public float multiplierForTrimLevel(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            return 0f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return 0.75f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.75f;
+        }
+        return 1f;
+    }
+}
@@ -0,0 +1,438 @@
+package com.example.sr_document_scan;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Page clean-up on raw pixel buffers: grayscale, contrast normalization, adaptive
+// (Bradley) thresholding and skew correction. Every pass splits the image into tiles
+// that run on a fork-join pool; buffers are allocated once per image, never per tile.
+public class ImageEnhancer {
+
+    public enum Mode {
+        ORIGINAL,
+        GRAYSCALE,
+        CONTRAST,
+        BLACK_WHITE
+    }
+
+    public static final int TILE_SIZE = 256;
+
+    // Fraction of pixels clipped at each end of the histogram when stretching contrast
+    private static final double CONTRAST_CLIP = 0.01;
+    // Bradley threshold: a pixel is dark if it is this many percent below its window mean
+    private static final int THRESHOLD_PERCENT = 15;
+    // Skew search range and step, in degrees
+    private static final double MAX_SKEW = 5.0;
+    private static final double SKEW_STEP = 0.2;
+    // Width the skew estimate samples the page down to
+    private static final int SKEW_SAMPLE_WIDTH = 800;
+
+    // Work done on one tile, given its bounds (x1/y1 exclusive) and its index
+    interface TileOp {
+        void apply(int tile, int x0, int y0, int x1, int y1);
+    }
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+
+    public ImageEnhancer() {
+        this(ForkJoinPool.commonPool(), TILE_SIZE);
+    }
+
+    public ImageEnhancer(ForkJoinPool pool, int tileSize) {
+        this.pool = pool;
+        this.tileSize = tileSize;
+    }
+
+    // Run the selected stages on ARGB pixels. The result has the same dimensions and may
+    // be the input array itself.
+    public int[] enhance(int[] argb, int width, int height, Mode mode, boolean deskew) {
+        if (mode == Mode.ORIGINAL && !deskew) {
+            return argb;
+        }
+
+        byte[] gray = new byte[width * height];
+        toGray(argb, gray, width, height);
+
+        if (mode == Mode.CONTRAST || mode == Mode.BLACK_WHITE) {
+            normalizeContrast(gray, width, height);
+        }
+
+        double angle = deskew ? estimateSkew(gray, width, height) : 0.0;
+        boolean rotate = Math.abs(angle) >= SKEW_STEP / 2;
+
+        if (mode == Mode.ORIGINAL) {
+            if (!rotate) {
+                return argb;
+            }
+            int[] rotated = new int[argb.length];
+            rotateArgb(argb, rotated, width, height, angle);
+            return rotated;
+        }
+
+        if (rotate) {
+            byte[] rotated = new byte[gray.length];
+            rotateGray(gray, rotated, width, height, angle);
+            gray = rotated;
+        }
+        if (mode == Mode.BLACK_WHITE) {
+            byte[] binary = new byte[gray.length];
+            binarize(gray, binary, width, height);
+            gray = binary;
+        }
+        grayToArgb(gray, argb, width, height);
+        return argb;
+    }
+
+    // --- Tiling ---
+
+    int tileCount(int width, int height) {
+        return tilesAcross(width) * ((height + tileSize - 1) / tileSize);
+    }
+
+    private int tilesAcross(int width) {
+        return (width + tileSize - 1) / tileSize;
+    }
+
+    private void forEachTile(int width, int height, TileOp op) {
+        int count = tileCount(width, height);
+        if (count == 0) {
+            return;
+        }
+        pool.invoke(new TileTask(op, width, height, 0, count));
+    }
+
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TileOp op;
+        private final int width;
+        private final int height;
+        private final int from;
+        private final int to;
+
+        TileTask(TileOp op, int width, int height, int from, int to) {
+            this.op = op;
+            this.width = width;
+            this.height = height;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileTask(op, width, height, from, mid),
+                        new TileTask(op, width, height, mid, to));
+                return;
+            }
+            int across = tilesAcross(width);
+            int x0 = (from % across) * tileSize;
+            int y0 = (from / across) * tileSize;
+            op.apply(from, x0, y0, Math.min(width, x0 + tileSize), Math.min(height, y0 + tileSize));
+        }
+    }
+
+    // --- Stages ---
+
+    // ITU-R BT.601 luma in fixed point
+    void toGray(final int[] argb, final byte[] gray, final int width, int height) {
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                for (int x = x0; x < x1; x++) {
+                    int p = argb[row + x];
+                    int r = (p >> 16) & 0xff;
+                    int g = (p >> 8) & 0xff;
+                    int b = p & 0xff;
+                    gray[row + x] = (byte) ((r * 77 + g * 150 + b * 29) >> 8);
+                }
+            }
+        });
+    }
+
+    void grayToArgb(final byte[] gray, final int[] argb, final int width, int height) {
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                for (int x = x0; x < x1; x++) {
+                    int v = gray[row + x] & 0xff;
+                    argb[row + x] = 0xff000000 | (v << 16) | (v << 8) | v;
+                }
+            }
+        });
+    }
+
+    // Stretch the histogram so the darkest and brightest 1% map to black and white
+    void normalizeContrast(final byte[] gray, final int width, int height) {
+        final int[][] histograms = new int[tileCount(width, height)][256];
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            int[] histogram = histograms[tile];
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                for (int x = x0; x < x1; x++) {
+                    histogram[gray[row + x] & 0xff]++;
+                }
+            }
+        });
+
+        int[] total = new int[256];
+        for (int[] histogram : histograms) {
+            for (int i = 0; i < 256; i++) {
+                total[i] += histogram[i];
+            }
+        }
+
+        long clip = (long) (gray.length * CONTRAST_CLIP);
+        int low = 0;
+        long seen = 0;
+        while (low < 255 && (seen += total[low]) <= clip) {
+            low++;
+        }
+        int high = 255;
+        seen = 0;
+        while (high > 0 && (seen += total[high]) <= clip) {
+            high--;
+        }
+        if (high <= low) {
+            return;
+        }
+
+        final byte[] lut = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            int v = (i - low) * 255 / (high - low);
+            lut[i] = (byte) Math.max(0, Math.min(255, v));
+        }
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                for (int x = x0; x < x1; x++) {
+                    gray[row + x] = lut[gray[row + x] & 0xff];
+                }
+            }
+        });
+    }
+
+    // Bradley adaptive threshold over an integral image. The integral is kept in int and
+    // allowed to wrap: window sums are differences, which stay exact as long as a single
+    // window's true sum fits in an int.
+    void binarize(final byte[] gray, final byte[] out, final int width, final int height) {
+        final int stride = width + 1;
+        final int[] integral = new int[stride * (height + 1)];
+
+        // Row prefix sums in row bands, then column prefix sums in column bands
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            if (x0 != 0) {
+                return;
+            }
+            for (int y = y0; y < y1; y++) {
+                int sum = 0;
+                int src = y * width;
+                int dst = (y + 1) * stride + 1;
+                for (int x = 0; x < width; x++) {
+                    sum += gray[src + x] & 0xff;
+                    integral[dst + x] = sum;
+                }
+            }
+        });
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            if (y0 != 0) {
+                return;
+            }
+            for (int y = 1; y <= height; y++) {
+                int row = y * stride;
+                int above = row - stride;
+                for (int x = x0 + 1; x <= x1; x++) {
+                    integral[row + x] += integral[above + x];
+                }
+            }
+        });
+
+        final int radius = Math.max(4, Math.max(width, height) / 32);
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int top = Math.max(0, y - radius);
+                int bottom = Math.min(height - 1, y + radius);
+                int topRow = top * stride;
+                int bottomRow = (bottom + 1) * stride;
+                int row = y * width;
+                for (int x = x0; x < x1; x++) {
+                    int left = Math.max(0, x - radius);
+                    int right = Math.min(width - 1, x + radius);
+                    int sum = integral[bottomRow + right + 1] - integral[topRow + right + 1]
+                            - integral[bottomRow + left] + integral[topRow + left];
+                    long count = (long) (right - left + 1) * (bottom - top + 1);
+                    long value = (long) (gray[row + x] & 0xff) * count * 100;
+                    boolean dark = value <= (sum & 0xffffffffL) * (100 - THRESHOLD_PERCENT);
+                    out[row + x] = dark ? 0 : (byte) 255;
+                }
+            }
+        });
+    }
+
+    // Skew of the text lines in degrees, found by projecting dark pixels at each candidate
+    // angle and keeping the angle with the sharpest (highest energy) row profile
+    double estimateSkew(byte[] gray, int width, int height) {
+        int step = Math.max(1, width / SKEW_SAMPLE_WIDTH);
+
+        long sum = 0;
+        int samples = 0;
+        for (int y = 0; y < height; y += step) {
+            int row = y * width;
+            for (int x = 0; x < width; x += step) {
+                sum += gray[row + x] & 0xff;
+                samples++;
+            }
+        }
+        if (samples == 0) {
+            return 0.0;
+        }
+        int darkThreshold = (int) (sum / samples) * 2 / 3;
+
+        int dark = 0;
+        for (int y = 0; y < height; y += step) {
+            int row = y * width;
+            for (int x = 0; x < width; x += step) {
+                if ((gray[row + x] & 0xff) < darkThreshold) {
+                    dark++;
+                }
+            }
+        }
+        if (dark < 16) {
+            return 0.0;
+        }
+        int[] px = new int[dark];
+        int[] py = new int[dark];
+        int n = 0;
+        for (int y = 0; y < height; y += step) {
+            int row = y * width;
+            for (int x = 0; x < width; x += step) {
+                if ((gray[row + x] & 0xff) < darkThreshold) {
+                    px[n] = x / step;
+                    py[n] = y / step;
+                    n++;
+                }
+            }
+        }
+
+        int sampledWidth = (width + step - 1) / step;
+        int sampledHeight = (height + step - 1) / step;
+        int margin = (int) Math.ceil(sampledWidth * Math.tan(Math.toRadians(MAX_SKEW))) + 1;
+        int bins = sampledHeight + 2 * margin;
+        int angles = (int) Math.round(2 * MAX_SKEW / SKEW_STEP) + 1;
+        int[][] profiles = new int[angles][bins];
+        long[] scores = new long[angles];
+
+        pool.invoke(new AngleTask(px, py, profiles, scores, margin, 0, angles));
+
+        int best = angles / 2;
+        for (int i = 0; i < angles; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        return -MAX_SKEW + best * SKEW_STEP;
+    }
+
+    // Scores a range of candidate skew angles, one profile buffer per angle
+    private static final class AngleTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] px;
+        private final int[] py;
+        private final int[][] profiles;
+        private final long[] scores;
+        private final int margin;
+        private final int from;
+        private final int to;
+
+        AngleTask(int[] px, int[] py, int[][] profiles, long[] scores, int margin, int from, int to) {
+            this.px = px;
+            this.py = py;
+            this.profiles = profiles;
+            this.scores = scores;
+            this.margin = margin;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new AngleTask(px, py, profiles, scores, margin, from, mid),
+                        new AngleTask(px, py, profiles, scores, margin, mid, to));
+                return;
+            }
+            double slope = Math.tan(Math.toRadians(-MAX_SKEW + from * SKEW_STEP));
+            int[] profile = profiles[from];
+            int bins = profile.length;
+            for (int i = 0; i < px.length; i++) {
+                int bin = (int) Math.round(py[i] - px[i] * slope) + margin;
+                if (bin >= 0 && bin < bins) {
+                    profile[bin]++;
+                }
+            }
+            long score = 0;
+            for (int b = 1; b < bins; b++) {
+                long d = profile[b] - profile[b - 1];
+                score += d * d;
+            }
+            scores[from] = score;
+        }
+    }
+
+    // Rotate about the centre so lines skewed by angle (degrees, y down) come out level.
+    // Pixels that come from outside the source are filled with white.
+    void rotateGray(final byte[] src, final byte[] dst, final int width, final int height, double angle) {
+        final double sin = Math.sin(Math.toRadians(angle));
+        final double cos = Math.cos(Math.toRadians(angle));
+        final double cx = (width - 1) / 2.0;
+        final double cy = (height - 1) / 2.0;
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                double dy = y - cy;
+                for (int x = x0; x < x1; x++) {
+                    double dx = x - cx;
+                    double sx = dx * cos - dy * sin + cx;
+                    double sy = dx * sin + dy * cos + cy;
+                    int ix = (int) Math.floor(sx);
+                    int iy = (int) Math.floor(sy);
+                    int value;
+                    if (ix < 0 || iy < 0 || ix >= width - 1 || iy >= height - 1) {
+                        value = 255;
+                    } else {
+                        double fx = sx - ix;
+                        double fy = sy - iy;
+                        int i = iy * width + ix;
+                        double topRow = (src[i] & 0xff) * (1 - fx) + (src[i + 1] & 0xff) * fx;
+                        double bottomRow = (src[i + width] & 0xff) * (1 - fx) + (src[i + width + 1] & 0xff) * fx;
+                        value = (int) (topRow * (1 - fy) + bottomRow * fy + 0.5);
+                    }
+                    dst[y * width + x] = (byte) value;
+                }
+            }
+        });
+    }
+
+    // Nearest-neighbour version for colour pages
+    void rotateArgb(final int[] src, final int[] dst, final int width, final int height, double angle) {
+        final double sin = Math.sin(Math.toRadians(angle));
+        final double cos = Math.cos(Math.toRadians(angle));
+        final double cx = (width - 1) / 2.0;
+        final double cy = (height - 1) / 2.0;
+        forEachTile(width, height, (tile, x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                double dy = y - cy;
+                for (int x = x0; x < x1; x++) {
+                    double dx = x - cx;
+                    int sx = (int) Math.round(dx * cos - dy * sin + cx);
+                    int sy = (int) Math.round(dx * sin + dy * cos + cy);
+                    boolean inside = sx >= 0 && sy >= 0 && sx < width && sy < height;
+                    dst[y * width + x] = inside ? src[sy * width + sx] : 0xffffffff;
+                }
+            }
+        });
+    }
+}
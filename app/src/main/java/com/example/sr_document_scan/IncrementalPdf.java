@@ -0,0 +1,823 @@
+package com.example.sr_document_scan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Edits the page list of an existing PDF by appending an incremental update section
+// (new objects, a new cross-reference section and a trailer pointing at the old one).
+// The original bytes are never touched, so the cost of a commit depends on how many
+// objects changed, not on the size of the document.
+public class IncrementalPdf {
+
+    private static final int TAIL_SIZE = 2048;
+    private static final String[] INHERITABLE = {"Resources", "MediaBox", "CropBox", "Rotate"};
+
+    // Cross-reference entry: type 1 is a byte offset, type 2 lives in an object stream
+    private static final class XrefEntry {
+        final int type;
+        final long field2;
+        final int field3;
+
+        XrefEntry(int type, long field2, int field3) {
+            this.type = type;
+            this.field2 = field2;
+            this.field3 = field3;
+        }
+    }
+
+    private static final class Page {
+        final PdfSyntax.Ref ref;
+        final Map<String, Object> dict;
+        boolean dirty;
+
+        Page(PdfSyntax.Ref ref, Map<String, Object> dict, boolean dirty) {
+            this.ref = ref;
+            this.dict = dict;
+            this.dirty = dirty;
+        }
+    }
+
+    private static final class NewObject {
+        final PdfSyntax.Ref ref;
+        final Object value;
+
+        NewObject(PdfSyntax.Ref ref, Object value) {
+            this.ref = ref;
+            this.value = value;
+        }
+    }
+
+    private final File file;
+    private long fileLength;
+    private final Map<Integer, XrefEntry> xref = new HashMap<>();
+    private final Map<Integer, Object> objectCache = new HashMap<>();
+    private final Map<Integer, Object[]> objectStreams = new HashMap<>();
+
+    private RandomAccessFile raf;
+    private long startXref;
+    private boolean xrefIsStream;
+    private Map<String, Object> trailer;
+    private int nextObjectNumber;
+
+    private PdfSyntax.Ref pagesRootRef;
+    private Map<String, Object> pagesRoot;
+    private final List<Page> pages = new ArrayList<>();
+    private final List<NewObject> newObjects = new ArrayList<>();
+    private boolean pageListChanged;
+
+    private IncrementalPdf(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.fileLength = raf.length();
+    }
+
+    // Parse the cross-reference chain and page tree of a PDF on disk
+    public static IncrementalPdf open(File file) throws IOException {
+        IncrementalPdf pdf = new IncrementalPdf(file);
+        try {
+            pdf.readXrefChain();
+            pdf.readPageTree();
+        } finally {
+            pdf.raf.close();
+            pdf.raf = null;
+        }
+        return pdf;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public PdfSyntax.Ref getPageRef(int index) {
+        return pages.get(index).ref;
+    }
+
+    // Effective /Rotate of a page, including any value inherited from the page tree
+    public int getRotation(int index) {
+        Object rotate = pages.get(index).dict.get("Rotate");
+        return rotate instanceof Number ? ((Number) rotate).intValue() : 0;
+    }
+
+    public void movePage(int from, int to) {
+        Page page = pages.remove(from);
+        pages.add(to, page);
+        pageListChanged = true;
+    }
+
+    public void removePage(int index) {
+        pages.remove(index);
+        pageListChanged = true;
+    }
+
+    // Rotate clockwise by a multiple of 90 degrees on top of the current rotation
+    public void rotatePage(int index, int degrees) {
+        if (degrees % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + degrees);
+        }
+        Page page = pages.get(index);
+        int rotation = ((getRotation(index) + degrees) % 360 + 360) % 360;
+        page.dict.put("Rotate", (long) rotation);
+        page.dirty = true;
+    }
+
+    // Add a page that shows a JPEG image, sized like its neighbours
+    public void insertJpegPage(int index, byte[] jpeg) throws IOException {
+        int[] info = readJpegInfo(jpeg);
+        int imageWidth = info[0];
+        int imageHeight = info[1];
+        int components = info[2];
+
+        double pageWidth = 595.0;
+        if (!pages.isEmpty()) {
+            Page neighbour = pages.get(Math.min(index, pages.size() - 1));
+            Object mediaBox = neighbour.dict.containsKey("MediaBox")
+                    ? neighbour.dict.get("MediaBox") : pagesRoot.get("MediaBox");
+            if (mediaBox instanceof List && ((List<?>) mediaBox).size() == 4
+                    && ((List<?>) mediaBox).get(0) instanceof Number
+                    && ((List<?>) mediaBox).get(2) instanceof Number) {
+                List<?> box = (List<?>) mediaBox;
+                pageWidth = ((Number) box.get(2)).doubleValue() - ((Number) box.get(0)).doubleValue();
+            }
+        }
+        double pageHeight = pageWidth * imageHeight / imageWidth;
+
+        Map<String, Object> imageDict = new LinkedHashMap<>();
+        imageDict.put("Type", new PdfSyntax.Name("XObject"));
+        imageDict.put("Subtype", new PdfSyntax.Name("Image"));
+        imageDict.put("Width", (long) imageWidth);
+        imageDict.put("Height", (long) imageHeight);
+        imageDict.put("ColorSpace", new PdfSyntax.Name(
+                components == 1 ? "DeviceGray" : components == 4 ? "DeviceCMYK" : "DeviceRGB"));
+        imageDict.put("BitsPerComponent", 8L);
+        imageDict.put("Filter", new PdfSyntax.Name("DCTDecode"));
+        PdfSyntax.Ref imageRef = addObject(new PdfSyntax.Stream(imageDict, jpeg));
+
+        String content = String.format(Locale.US, "q %.2f 0 0 %.2f 0 0 cm /Im0 Do Q", pageWidth, pageHeight);
+        PdfSyntax.Ref contentRef = addObject(new PdfSyntax.Stream(new LinkedHashMap<String, Object>(),
+                content.getBytes(StandardCharsets.ISO_8859_1)));
+
+        Map<String, Object> xObjects = new LinkedHashMap<>();
+        xObjects.put("Im0", imageRef);
+        Map<String, Object> resources = new LinkedHashMap<>();
+        resources.put("XObject", xObjects);
+
+        List<Object> mediaBox = new ArrayList<>();
+        mediaBox.add(0L);
+        mediaBox.add(0L);
+        mediaBox.add(pageWidth);
+        mediaBox.add(pageHeight);
+
+        Map<String, Object> pageDict = new LinkedHashMap<>();
+        pageDict.put("Type", new PdfSyntax.Name("Page"));
+        pageDict.put("Parent", pagesRootRef);
+        pageDict.put("MediaBox", mediaBox);
+        pageDict.put("Resources", resources);
+        pageDict.put("Contents", contentRef);
+        // The new page hangs off the root, don't let it pick up the root's rotation or crop
+        if (pagesRoot.containsKey("Rotate")) {
+            pageDict.put("Rotate", 0L);
+        }
+        if (pagesRoot.containsKey("CropBox")) {
+            pageDict.put("CropBox", mediaBox);
+        }
+
+        PdfSyntax.Ref pageRef = new PdfSyntax.Ref(nextObjectNumber++, 0);
+        pages.add(index, new Page(pageRef, pageDict, true));
+        pageListChanged = true;
+    }
+
+    private PdfSyntax.Ref addObject(Object value) {
+        PdfSyntax.Ref ref = new PdfSyntax.Ref(nextObjectNumber++, 0);
+        newObjects.add(new NewObject(ref, value));
+        return ref;
+    }
+
+    public boolean hasChanges() {
+        if (pageListChanged || !newObjects.isEmpty()) {
+            return true;
+        }
+        for (Page page : pages) {
+            if (page.dirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Append the pending changes to the file as one update section
+    public void commit() throws IOException {
+        if (!hasChanges()) {
+            return;
+        }
+
+        Map<PdfSyntax.Ref, Object> objects = new LinkedHashMap<>();
+        for (NewObject object : newObjects) {
+            objects.put(object.ref, object.value);
+        }
+        for (Page page : pages) {
+            if (page.dirty) {
+                objects.put(page.ref, page.dict);
+            }
+        }
+        if (pageListChanged) {
+            List<Object> kids = new ArrayList<>();
+            for (Page page : pages) {
+                kids.add(page.ref);
+            }
+            pagesRoot.put("Kids", kids);
+            pagesRoot.put("Count", (long) pages.size());
+            objects.put(pagesRootRef, pagesRoot);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Make sure the update starts on a fresh line after the previous %%EOF
+        out.write('\n');
+        TreeMap<Integer, long[]> offsets = new TreeMap<>();
+        for (Map.Entry<PdfSyntax.Ref, Object> entry : objects.entrySet()) {
+            PdfSyntax.Ref ref = entry.getKey();
+            offsets.put(ref.number, new long[]{fileLength + out.size(), ref.generation});
+            writeIndirectObject(ref, entry.getValue(), out);
+        }
+
+        Map<String, Object> newTrailer = new LinkedHashMap<>();
+        newTrailer.put("Size", (long) nextObjectNumber);
+        newTrailer.put("Root", trailer.get("Root"));
+        if (trailer.containsKey("Info")) {
+            newTrailer.put("Info", trailer.get("Info"));
+        }
+        if (trailer.containsKey("ID")) {
+            newTrailer.put("ID", trailer.get("ID"));
+        }
+        newTrailer.put("Prev", startXref);
+
+        long xrefOffset = fileLength + out.size();
+        if (xrefIsStream) {
+            writeXrefStream(offsets, newTrailer, xrefOffset, out);
+        } else {
+            writeXrefTable(offsets, newTrailer, out);
+        }
+        PdfSyntax.writeAscii("startxref\n" + xrefOffset + "\n%%EOF\n", out);
+
+        try (RandomAccessFile writer = new RandomAccessFile(file, "rw")) {
+            writer.seek(fileLength);
+            writer.write(out.toByteArray());
+        }
+
+        // Later commits on this instance chain onto the section we just wrote
+        for (Map.Entry<Integer, long[]> entry : offsets.entrySet()) {
+            xref.put(entry.getKey(), new XrefEntry(1, entry.getValue()[0], (int) entry.getValue()[1]));
+        }
+        nextObjectNumber = ((Number) newTrailer.get("Size")).intValue();
+        startXref = xrefOffset;
+        fileLength += out.size();
+        newObjects.clear();
+        pageListChanged = false;
+        for (Page page : pages) {
+            page.dirty = false;
+        }
+    }
+
+    private void writeIndirectObject(PdfSyntax.Ref ref, Object value, ByteArrayOutputStream out) {
+        PdfSyntax.writeAscii(ref.number + " " + ref.generation + " obj\n", out);
+        if (value instanceof PdfSyntax.Stream) {
+            PdfSyntax.Stream stream = (PdfSyntax.Stream) value;
+            Map<String, Object> dict = new LinkedHashMap<>(stream.dict);
+            dict.put("Length", (long) stream.data.length);
+            PdfSyntax.write(dict, out);
+            PdfSyntax.writeAscii("\nstream\n", out);
+            out.write(stream.data, 0, stream.data.length);
+            PdfSyntax.writeAscii("\nendstream", out);
+        } else {
+            PdfSyntax.write(value, out);
+        }
+        PdfSyntax.writeAscii("\nendobj\n", out);
+    }
+
+    private void writeXrefTable(TreeMap<Integer, long[]> offsets, Map<String, Object> newTrailer,
+                                ByteArrayOutputStream out) {
+        PdfSyntax.writeAscii("xref\n", out);
+        List<Integer> numbers = new ArrayList<>(offsets.keySet());
+        int i = 0;
+        while (i < numbers.size()) {
+            // One subsection per run of consecutive object numbers
+            int j = i;
+            while (j + 1 < numbers.size() && numbers.get(j + 1) == numbers.get(j) + 1) {
+                j++;
+            }
+            PdfSyntax.writeAscii(numbers.get(i) + " " + (j - i + 1) + "\n", out);
+            for (int k = i; k <= j; k++) {
+                long[] entry = offsets.get(numbers.get(k));
+                PdfSyntax.writeAscii(String.format(Locale.US, "%010d %05d n\r\n", entry[0], entry[1]), out);
+            }
+            i = j + 1;
+        }
+        PdfSyntax.writeAscii("trailer\n", out);
+        PdfSyntax.write(newTrailer, out);
+        PdfSyntax.writeAscii("\n", out);
+    }
+
+    // The previous section was a cross-reference stream, so this one is too (uncompressed)
+    private void writeXrefStream(TreeMap<Integer, long[]> offsets, Map<String, Object> newTrailer,
+                                 long xrefOffset, ByteArrayOutputStream out) {
+        int xrefNumber = nextObjectNumber;
+        offsets.put(xrefNumber, new long[]{xrefOffset, 0});
+        newTrailer.put("Size", (long) xrefNumber + 1);
+
+        List<Object> index = new ArrayList<>();
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        for (Map.Entry<Integer, long[]> entry : offsets.entrySet()) {
+            index.add((long) entry.getKey());
+            index.add(1L);
+            long offset = entry.getValue()[0];
+            int generation = (int) entry.getValue()[1];
+            rows.write(1);
+            rows.write((int) (offset >>> 32) & 0xff);
+            rows.write((int) (offset >>> 24) & 0xff);
+            rows.write((int) (offset >>> 16) & 0xff);
+            rows.write((int) (offset >>> 8) & 0xff);
+            rows.write((int) offset & 0xff);
+            rows.write((generation >>> 8) & 0xff);
+            rows.write(generation & 0xff);
+        }
+
+        List<Object> widths = new ArrayList<>();
+        widths.add(1L);
+        widths.add(5L);
+        widths.add(2L);
+
+        Map<String, Object> dict = new LinkedHashMap<>();
+        dict.put("Type", new PdfSyntax.Name("XRef"));
+        dict.putAll(newTrailer);
+        dict.put("W", widths);
+        dict.put("Index", index);
+        writeIndirectObject(new PdfSyntax.Ref(xrefNumber, 0), new PdfSyntax.Stream(dict, rows.toByteArray()), out);
+    }
+
+    // --- Reading ---
+
+    private void readXrefChain() throws IOException {
+        int tail = (int) Math.min(TAIL_SIZE, fileLength);
+        byte[] tailBytes = readBytes(fileLength - tail, tail);
+        String tailText = new String(tailBytes, StandardCharsets.ISO_8859_1);
+        int marker = tailText.lastIndexOf("startxref");
+        if (marker < 0) {
+            throw new IOException("No startxref found");
+        }
+        PdfSyntax.Parser parser = new PdfSyntax.Parser(tailBytes, marker + "startxref".length());
+        startXref = Long.parseLong(parser.nextToken());
+
+        long offset = startXref;
+        boolean newest = true;
+        int guard = 0;
+        while (offset >= 0 && guard++ < 1000) {
+            Map<String, Object> sectionTrailer = readXrefSection(offset, newest);
+            if (newest) {
+                trailer = sectionTrailer;
+                if (trailer.containsKey("Encrypt")) {
+                    throw new IOException("Encrypted PDFs are not supported");
+                }
+                nextObjectNumber = ((Number) trailer.get("Size")).intValue();
+                newest = false;
+            }
+            Object stm = sectionTrailer.get("XRefStm");
+            if (stm instanceof Number) {
+                readXrefSection(((Number) stm).longValue(), false);
+            }
+            Object prev = sectionTrailer.get("Prev");
+            offset = prev instanceof Number ? ((Number) prev).longValue() : -1;
+        }
+    }
+
+    // Newer sections are read first, so entries already present win
+    private Map<String, Object> readXrefSection(long offset, boolean newest) throws IOException {
+        byte[] head = readBytes(offset, (int) Math.min(16, fileLength - offset));
+        if (new String(head, StandardCharsets.ISO_8859_1).startsWith("xref")) {
+            if (newest) {
+                xrefIsStream = false;
+            }
+            return readXrefTable(offset);
+        }
+        if (newest) {
+            xrefIsStream = true;
+        }
+        return readXrefStream(offset);
+    }
+
+    private Map<String, Object> readXrefTable(long offset) throws IOException {
+        // The trailer dictionary sits between "trailer" and "startxref"
+        byte[] data = readUntil(offset, "startxref", 1 << 26);
+        PdfSyntax.Parser parser = new PdfSyntax.Parser(data, 0);
+        parser.expectToken("xref");
+        while (true) {
+            String token = parser.nextToken();
+            if (token.equals("trailer")) {
+                break;
+            }
+            int start = Integer.parseInt(token);
+            int count = Integer.parseInt(parser.nextToken());
+            for (int i = 0; i < count; i++) {
+                long field = Long.parseLong(parser.nextToken());
+                int generation = Integer.parseInt(parser.nextToken());
+                String kind = parser.nextToken();
+                int number = start + i;
+                if (!xref.containsKey(number)) {
+                    xref.put(number, new XrefEntry(kind.equals("n") ? 1 : 0, field, generation));
+                }
+            }
+        }
+        Object dict = parser.nextObject();
+        if (!(dict instanceof Map)) {
+            throw new IOException("Malformed trailer");
+        }
+        return castDict(dict);
+    }
+
+    private Map<String, Object> readXrefStream(long offset) throws IOException {
+        PdfSyntax.Stream stream = (PdfSyntax.Stream) readIndirectObjectAt(offset, true)[1];
+        Map<String, Object> dict = stream.dict;
+        byte[] data = decodeStream(stream);
+
+        List<?> widths = (List<?>) dict.get("W");
+        int w0 = ((Number) widths.get(0)).intValue();
+        int w1 = ((Number) widths.get(1)).intValue();
+        int w2 = ((Number) widths.get(2)).intValue();
+        int rowSize = w0 + w1 + w2;
+
+        List<?> index = (List<?>) dict.get("Index");
+        if (index == null) {
+            List<Object> all = new ArrayList<>();
+            all.add(0L);
+            all.add(dict.get("Size"));
+            index = all;
+        }
+
+        int row = 0;
+        for (int i = 0; i + 1 < index.size(); i += 2) {
+            int start = ((Number) index.get(i)).intValue();
+            int count = ((Number) index.get(i + 1)).intValue();
+            for (int j = 0; j < count; j++, row++) {
+                int p = row * rowSize;
+                if (p + rowSize > data.length) {
+                    throw new IOException("Truncated cross-reference stream");
+                }
+                int type = w0 == 0 ? 1 : (int) readField(data, p, w0);
+                long field2 = readField(data, p + w0, w1);
+                int field3 = (int) readField(data, p + w0 + w1, w2);
+                int number = start + j;
+                if (!xref.containsKey(number)) {
+                    xref.put(number, new XrefEntry(type, field2, field3));
+                }
+            }
+        }
+        return dict;
+    }
+
+    private static long readField(byte[] data, int pos, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 8) | (data[pos + i] & 0xff);
+        }
+        return value;
+    }
+
+    private void readPageTree() throws IOException {
+        Map<String, Object> catalog = castDict(resolve(trailer.get("Root")));
+        Object pagesRef = catalog.get("Pages");
+        if (!(pagesRef instanceof PdfSyntax.Ref)) {
+            throw new IOException("Catalog has no page tree reference");
+        }
+        pagesRootRef = (PdfSyntax.Ref) pagesRef;
+        pagesRoot = new LinkedHashMap<>(castDict(resolve(pagesRootRef)));
+        collectPages(pagesRoot, new HashMap<String, Object>(), 0);
+    }
+
+    // Flatten the page tree. Pages that sat under an intermediate node get the attributes
+    // they inherited copied in and are re-parented to the root, which means rewriting them.
+    private void collectPages(Map<String, Object> node, Map<String, Object> inherited, int depth) throws IOException {
+        if (depth > 64) {
+            throw new IOException("Page tree too deep");
+        }
+        // Every node from the root down, the root included, may set an inheritable
+        // attribute; the nearest one wins
+        Map<String, Object> nodeInherited = new HashMap<>(inherited);
+        for (String key : INHERITABLE) {
+            if (node.containsKey(key)) {
+                nodeInherited.put(key, node.get(key));
+            }
+        }
+
+        Object kids = resolve(node.get("Kids"));
+        if (!(kids instanceof List)) {
+            return;
+        }
+        for (Object kid : (List<?>) kids) {
+            if (!(kid instanceof PdfSyntax.Ref)) {
+                continue;
+            }
+            Map<String, Object> kidDict = new LinkedHashMap<>(castDict(resolve(kid)));
+            Object type = kidDict.get("Type");
+            boolean isPages = type instanceof PdfSyntax.Name && ((PdfSyntax.Name) type).value.equals("Pages")
+                    || kidDict.containsKey("Kids");
+            if (isPages) {
+                collectPages(kidDict, nodeInherited, depth + 1);
+                continue;
+            }
+
+            boolean dirty = false;
+            if (depth > 0) {
+                for (Map.Entry<String, Object> entry : nodeInherited.entrySet()) {
+                    if (!kidDict.containsKey(entry.getKey())) {
+                        kidDict.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                kidDict.put("Parent", pagesRootRef);
+                dirty = true;
+            } else if (!kidDict.containsKey("Rotate") && nodeInherited.get("Rotate") instanceof Number) {
+                // Keep rotation readable per page, no rewrite needed since the root still carries it
+                kidDict.put("Rotate", nodeInherited.get("Rotate"));
+            }
+            pages.add(new Page((PdfSyntax.Ref) kid, kidDict, dirty));
+        }
+        if (depth > 0) {
+            pageListChanged = true;
+        }
+    }
+
+    private Object resolve(Object value) throws IOException {
+        if (value instanceof PdfSyntax.Ref) {
+            return getObject(((PdfSyntax.Ref) value).number);
+        }
+        return value;
+    }
+
+    private Object getObject(int number) throws IOException {
+        if (objectCache.containsKey(number)) {
+            return objectCache.get(number);
+        }
+        XrefEntry entry = xref.get(number);
+        Object value;
+        if (entry == null || entry.type == 0) {
+            value = PdfSyntax.NULL;
+        } else if (entry.type == 1) {
+            value = readIndirectObjectAt(entry.field2, false)[1];
+        } else {
+            value = readFromObjectStream((int) entry.field2, entry.field3);
+        }
+        objectCache.put(number, value);
+        return value;
+    }
+
+    private Object readFromObjectStream(int streamNumber, int index) throws IOException {
+        Object[] parsed = objectStreams.get(streamNumber);
+        if (parsed == null) {
+            Object streamObject = getObject(streamNumber);
+            if (!(streamObject instanceof PdfSyntax.Stream)) {
+                throw new IOException("Object " + streamNumber + " is not an object stream");
+            }
+            PdfSyntax.Stream stream = (PdfSyntax.Stream) streamObject;
+            byte[] data = decodeStream(stream);
+            int count = ((Number) stream.dict.get("N")).intValue();
+            int first = ((Number) stream.dict.get("First")).intValue();
+            PdfSyntax.Parser parser = new PdfSyntax.Parser(data, 0, first);
+            int[] offsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                parser.nextToken(); // object number
+                offsets[i] = Integer.parseInt(parser.nextToken());
+            }
+            parsed = new Object[]{data, first, offsets};
+            objectStreams.put(streamNumber, parsed);
+        }
+        byte[] data = (byte[]) parsed[0];
+        int first = (Integer) parsed[1];
+        int[] offsets = (int[]) parsed[2];
+        if (index < 0 || index >= offsets.length) {
+            throw new IOException("Bad object stream index " + index);
+        }
+        return new PdfSyntax.Parser(data, first + offsets[index]).nextObject();
+    }
+
+    // Returns {Ref, value}; stream data is read using /Length
+    private Object[] readIndirectObjectAt(long offset, boolean allowStream) throws IOException {
+        byte[] data = readUntil(offset, "endobj", 1 << 20);
+        PdfSyntax.Parser parser = new PdfSyntax.Parser(data, 0);
+        int number = Integer.parseInt(parser.nextToken());
+        int generation = Integer.parseInt(parser.nextToken());
+        parser.expectToken("obj");
+        Object value = parser.nextObject();
+        if (value instanceof PdfSyntax.StreamStart) {
+            PdfSyntax.StreamStart start = (PdfSyntax.StreamStart) value;
+            Object length = start.dict.get("Length");
+            if (length instanceof PdfSyntax.Ref) {
+                length = getObject(((PdfSyntax.Ref) length).number);
+            }
+            if (!(length instanceof Number)) {
+                throw new IOException("Stream without /Length at " + offset);
+            }
+            int size = ((Number) length).intValue();
+            byte[] streamData = readBytes(offset + start.dataOffset, size);
+            value = new PdfSyntax.Stream(start.dict, streamData);
+        }
+        return new Object[]{new PdfSyntax.Ref(number, generation), value};
+    }
+
+    private byte[] decodeStream(PdfSyntax.Stream stream) throws IOException {
+        Object filter = stream.dict.get("Filter");
+        if (filter instanceof List) {
+            List<?> filters = (List<?>) filter;
+            if (filters.isEmpty()) {
+                filter = null;
+            } else if (filters.size() == 1) {
+                filter = filters.get(0);
+            } else {
+                throw new IOException("Chained filters are not supported");
+            }
+        }
+        if (filter == null) {
+            return stream.data;
+        }
+        if (!(filter instanceof PdfSyntax.Name) || !((PdfSyntax.Name) filter).value.equals("FlateDecode")) {
+            throw new IOException("Unsupported filter " + filter);
+        }
+
+        byte[] inflated = inflate(stream.data);
+        Object parms = stream.dict.get("DecodeParms");
+        if (parms instanceof List) {
+            parms = ((List<?>) parms).isEmpty() ? null : ((List<?>) parms).get(0);
+        }
+        if (parms instanceof Map) {
+            Map<String, Object> decodeParms = castDict(parms);
+            Object predictor = decodeParms.get("Predictor");
+            if (predictor instanceof Number && ((Number) predictor).intValue() >= 10) {
+                Object columns = decodeParms.get("Columns");
+                int width = columns instanceof Number ? ((Number) columns).intValue() : 1;
+                return undoPngPredictor(inflated, width);
+            } else if (predictor instanceof Number && ((Number) predictor).intValue() > 1) {
+                throw new IOException("Unsupported predictor " + predictor);
+            }
+        }
+        return inflated;
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt Flate stream", e);
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    // PNG predictors as used by cross-reference streams (one filter byte per row)
+    private static byte[] undoPngPredictor(byte[] data, int columns) throws IOException {
+        int rowLength = columns + 1;
+        int rows = data.length / rowLength;
+        byte[] out = new byte[rows * columns];
+        byte[] previous = new byte[columns];
+        for (int r = 0; r < rows; r++) {
+            int filterType = data[r * rowLength] & 0xff;
+            int in = r * rowLength + 1;
+            int o = r * columns;
+            for (int c = 0; c < columns; c++) {
+                int raw = data[in + c] & 0xff;
+                int left = c > 0 ? out[o + c - 1] & 0xff : 0;
+                int up = previous[c] & 0xff;
+                int upLeft = c > 0 ? previous[c - 1] & 0xff : 0;
+                int value;
+                switch (filterType) {
+                    case 0: value = raw; break;
+                    case 1: value = raw + left; break;
+                    case 2: value = raw + up; break;
+                    case 3: value = raw + ((left + up) >> 1); break;
+                    case 4: value = raw + paeth(left, up, upLeft); break;
+                    default: throw new IOException("Bad PNG predictor " + filterType);
+                }
+                out[o + c] = (byte) value;
+            }
+            System.arraycopy(out, o, previous, 0, columns);
+        }
+        return out;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private byte[] readBytes(long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > fileLength) {
+            throw new IOException("Read past end of file at " + offset);
+        }
+        byte[] data = new byte[length];
+        raf.seek(offset);
+        raf.readFully(data);
+        return data;
+    }
+
+    // Read from offset until the marker is found (inclusive), growing the window as needed
+    private byte[] readUntil(long offset, String marker, int maxLength) throws IOException {
+        byte[] needle = marker.getBytes(StandardCharsets.ISO_8859_1);
+        int window = 1024;
+        while (true) {
+            int length = (int) Math.min(window, fileLength - offset);
+            byte[] data = readBytes(offset, length);
+            int found = indexOf(data, needle);
+            if (found >= 0) {
+                byte[] result = new byte[found + needle.length];
+                System.arraycopy(data, 0, result, 0, result.length);
+                return result;
+            }
+            if (offset + length >= fileLength || window >= maxLength) {
+                // Streams can legitimately be longer than the window; the caller reads them by /Length
+                return data;
+            }
+            window *= 4;
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] needle) {
+        outer:
+        for (int i = 0; i + needle.length <= data.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (data[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castDict(Object value) throws IOException {
+        if (!(value instanceof Map)) {
+            throw new IOException("Expected a dictionary but found " + value);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    // {width, height, components} from the first SOF marker of a JPEG
+    static int[] readJpegInfo(byte[] jpeg) throws IOException {
+        if (jpeg.length < 4 || (jpeg[0] & 0xff) != 0xFF || (jpeg[1] & 0xff) != 0xD8) {
+            throw new IOException("Not a JPEG image");
+        }
+        int pos = 2;
+        while (pos + 4 <= jpeg.length) {
+            if ((jpeg[pos] & 0xff) != 0xFF) {
+                pos++;
+                continue;
+            }
+            int marker = jpeg[pos + 1] & 0xff;
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0xD8 || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                pos += 2;
+                continue;
+            }
+            int length = ((jpeg[pos + 2] & 0xff) << 8) | (jpeg[pos + 3] & 0xff);
+            boolean isSof = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (isSof && pos + 9 < jpeg.length) {
+                int height = ((jpeg[pos + 5] & 0xff) << 8) | (jpeg[pos + 6] & 0xff);
+                int width = ((jpeg[pos + 7] & 0xff) << 8) | (jpeg[pos + 8] & 0xff);
+                int components = jpeg[pos + 9] & 0xff;
+                if (width <= 0 || height <= 0) {
+                    break;
+                }
+                return new int[]{width, height, components};
+            }
+            pos += 2 + length;
+        }
+        throw new IOException("JPEG has no frame header");
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.sr_document_scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The pages from one scanner run, waiting to be added to a folder. Page URIs are kept
+// as strings so a batch can be written to the session journal and replayed after a crash.
+public class IngestBatch {
+    private final String id;
+    private final String folderId;
+    private final List<String> pageUris;
+
+    public IngestBatch(String id, String folderId, List<String> pageUris) {
+        this.id = id;
+        this.folderId = folderId;
+        this.pageUris = Collections.unmodifiableList(new ArrayList<>(pageUris));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFolderId() {
+        return folderId;
+    }
+
+    public List<String> getPageUris() {
+        return pageUris;
+    }
+
+    public int getPageCount() {
+        return pageUris.size();
+    }
+}
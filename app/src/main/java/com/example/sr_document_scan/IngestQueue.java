@@ -0,0 +1,128 @@
+package com.example.sr_document_scan;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+// Bounded queue of scanned batches processed one at a time in the background. The bound
+// is in pages: offer() refuses a batch that would take the queue over capacity, and
+// hasRoomFor() lets the UI hold off the next scanner run until there is space for it.
+public class IngestQueue {
+    private static final String TAG = "IngestQueue";
+
+    public interface Processor {
+        void process(IngestBatch batch) throws Exception;
+    }
+
+    // Called on the worker thread
+    public interface Listener {
+        // error is what process() threw, null when the batch was ingested
+        void onBatchFinished(IngestBatch batch, @Nullable Exception error);
+
+        void onQueueChanged(int pendingPages);
+    }
+
+    private final int capacityPages;
+    private final Processor processor;
+    private final Executor executor;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Batches waiting or being processed, the head is the one in progress
+    private final ArrayDeque<IngestBatch> pending = new ArrayDeque<>();
+    private int pendingPages;
+
+    public IngestQueue(int capacityPages, @NonNull Processor processor, @NonNull Executor executor) {
+        if (capacityPages <= 0) {
+            throw new IllegalArgumentException("capacityPages must be positive");
+        }
+        this.capacityPages = capacityPages;
+        this.processor = processor;
+        this.executor = executor;
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getCapacityPages() {
+        return capacityPages;
+    }
+
+    public synchronized int getPendingPages() {
+        return pendingPages;
+    }
+
+    public synchronized int getPendingBatches() {
+        return pending.size();
+    }
+
+    // An empty queue always has room, so a batch bigger than the capacity can't get stuck
+    public synchronized boolean hasRoomFor(int pages) {
+        return pending.isEmpty() || pendingPages + pages <= capacityPages;
+    }
+
+    // Queue a batch for processing, false if there is no room for it right now
+    public boolean offer(@NonNull IngestBatch batch) {
+        int pages;
+        synchronized (this) {
+            if (!hasRoomFor(batch.getPageCount())) {
+                return false;
+            }
+            pending.add(batch);
+            pendingPages += batch.getPageCount();
+            pages = pendingPages;
+        }
+
+        // One task per batch; the executor runs them in order
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                processNext();
+            }
+        });
+        for (Listener listener : listeners) {
+            listener.onQueueChanged(pages);
+        }
+        return true;
+    }
+
+    private void processNext() {
+        IngestBatch batch;
+        synchronized (this) {
+            batch = pending.peek();
+        }
+        if (batch == null) {
+            return;
+        }
+
+        Exception error = null;
+        try {
+            processor.process(batch);
+        } catch (Exception e) {
+            // Reported to the listeners, the queue carries on with the next batch
+            Log.e(TAG, "Batch " + batch.getId() + " failed", e);
+            error = e;
+        }
+
+        int pages;
+        synchronized (this) {
+            pending.poll();
+            pendingPages -= batch.getPageCount();
+            pages = pendingPages;
+        }
+        for (Listener listener : listeners) {
+            listener.onBatchFinished(batch, error);
+            listener.onQueueChanged(pages);
+        }
+    }
+}
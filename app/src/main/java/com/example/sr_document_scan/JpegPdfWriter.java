@@ -0,0 +1,158 @@
+package com.example.sr_document_scan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Writes a new PDF with one JPEG image per page. Pages are streamed out as they are
+// added, so only the current page's JPEG has to be in memory.
+public class JpegPdfWriter {
+    // A4 width in points, the page height follows the image's aspect ratio
+    static final double PAGE_WIDTH = 595.0;
+
+    private static final PdfSyntax.Ref CATALOG_REF = new PdfSyntax.Ref(1, 0);
+    private static final PdfSyntax.Ref PAGES_REF = new PdfSyntax.Ref(2, 0);
+
+    private final OutputStream out;
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<Object> kids = new ArrayList<>();
+    private long position;
+    private int nextObjectNumber = 3;
+    private boolean finished;
+
+    public JpegPdfWriter(OutputStream out) throws IOException {
+        this.out = out;
+        // Objects 1 and 2 (catalog and page tree) are written by finish()
+        offsets.add(0L);
+        offsets.add(0L);
+        write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n".getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    // Append a page showing the JPEG, turned clockwise by rotation degrees
+    public void addPage(byte[] jpeg, int rotation) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("PDF already finished");
+        }
+        int[] info = IncrementalPdf.readJpegInfo(jpeg);
+        int components = info[2];
+        double pageHeight = PAGE_WIDTH * info[1] / info[0];
+
+        Map<String, Object> imageDict = new LinkedHashMap<>();
+        imageDict.put("Type", new PdfSyntax.Name("XObject"));
+        imageDict.put("Subtype", new PdfSyntax.Name("Image"));
+        imageDict.put("Width", (long) info[0]);
+        imageDict.put("Height", (long) info[1]);
+        imageDict.put("ColorSpace", new PdfSyntax.Name(
+                components == 1 ? "DeviceGray" : components == 4 ? "DeviceCMYK" : "DeviceRGB"));
+        imageDict.put("BitsPerComponent", 8L);
+        imageDict.put("Filter", new PdfSyntax.Name("DCTDecode"));
+        PdfSyntax.Ref imageRef = writeObject(new PdfSyntax.Stream(imageDict, jpeg));
+
+        String content = String.format(Locale.US, "q %.2f 0 0 %.2f 0 0 cm /Im0 Do Q", PAGE_WIDTH, pageHeight);
+        PdfSyntax.Ref contentRef = writeObject(new PdfSyntax.Stream(new LinkedHashMap<String, Object>(),
+                content.getBytes(StandardCharsets.ISO_8859_1)));
+
+        Map<String, Object> xObjects = new LinkedHashMap<>();
+        xObjects.put("Im0", imageRef);
+        Map<String, Object> resources = new LinkedHashMap<>();
+        resources.put("XObject", xObjects);
+
+        List<Object> mediaBox = new ArrayList<>();
+        mediaBox.add(0L);
+        mediaBox.add(0L);
+        mediaBox.add(PAGE_WIDTH);
+        mediaBox.add(pageHeight);
+
+        Map<String, Object> pageDict = new LinkedHashMap<>();
+        pageDict.put("Type", new PdfSyntax.Name("Page"));
+        pageDict.put("Parent", PAGES_REF);
+        pageDict.put("MediaBox", mediaBox);
+        pageDict.put("Resources", resources);
+        pageDict.put("Contents", contentRef);
+        int normalized = ((rotation % 360) + 360) % 360;
+        if (normalized != 0) {
+            pageDict.put("Rotate", (long) normalized);
+        }
+        kids.add(writeObject(pageDict));
+    }
+
+    public int getPageCount() {
+        return kids.size();
+    }
+
+    // Write the page tree, catalog, cross-reference table and trailer. Does not close the stream.
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        Map<String, Object> pages = new LinkedHashMap<>();
+        pages.put("Type", new PdfSyntax.Name("Pages"));
+        pages.put("Kids", kids);
+        pages.put("Count", (long) kids.size());
+        writeObject(PAGES_REF, pages);
+
+        Map<String, Object> catalog = new LinkedHashMap<>();
+        catalog.put("Type", new PdfSyntax.Name("Catalog"));
+        catalog.put("Pages", PAGES_REF);
+        writeObject(CATALOG_REF, catalog);
+
+        ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        long xrefOffset = position;
+        PdfSyntax.writeAscii("xref\n0 " + (offsets.size() + 1) + "\n", tail);
+        PdfSyntax.writeAscii("0000000000 65535 f\r\n", tail);
+        for (long offset : offsets) {
+            PdfSyntax.writeAscii(String.format(Locale.US, "%010d %05d n\r\n", offset, 0), tail);
+        }
+
+        Map<String, Object> trailer = new LinkedHashMap<>();
+        trailer.put("Size", (long) offsets.size() + 1);
+        trailer.put("Root", CATALOG_REF);
+        PdfSyntax.writeAscii("trailer\n", tail);
+        PdfSyntax.write(trailer, tail);
+        PdfSyntax.writeAscii("\nstartxref\n" + xrefOffset + "\n%%EOF\n", tail);
+        write(tail.toByteArray());
+        out.flush();
+    }
+
+    private PdfSyntax.Ref writeObject(Object value) throws IOException {
+        PdfSyntax.Ref ref = new PdfSyntax.Ref(nextObjectNumber++, 0);
+        offsets.add(0L);
+        writeObject(ref, value);
+        return ref;
+    }
+
+    private void writeObject(PdfSyntax.Ref ref, Object value) throws IOException {
+        offsets.set(ref.number - 1, position);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        PdfSyntax.writeAscii(ref.number + " " + ref.generation + " obj\n", header);
+        if (value instanceof PdfSyntax.Stream) {
+            // Write the stream data straight through instead of copying it into the buffer
+            PdfSyntax.Stream stream = (PdfSyntax.Stream) value;
+            Map<String, Object> dict = new LinkedHashMap<>(stream.dict);
+            dict.put("Length", (long) stream.data.length);
+            PdfSyntax.write(dict, header);
+            PdfSyntax.writeAscii("\nstream\n", header);
+            write(header.toByteArray());
+            write(stream.data);
+            write("\nendstream\nendobj\n".getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            PdfSyntax.write(value, header);
+            PdfSyntax.writeAscii("\nendobj\n", header);
+            write(header.toByteArray());
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+}
@@ -7,11 +7,14 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.text.InputType;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -31,18 +34,33 @@ import com.google.mlkit.vision.documentscanner.GmsDocumentScanner;
 import com.google.mlkit.vision.documentscanner.GmsDocumentScanning;
 import com.google.mlkit.vision.documentscanner.GmsDocumentScanningResult;
 
-import java.io.File;
 import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
 
+    // Folders shown per "Load more" step
+    private static final int PAGE_SIZE = 50;
+
+    private ScrollView foldersScroll;
     private LinearLayout foldersContainer;
     private List<DocumentFolder> documentFolders = new ArrayList<>();
     private DocumentFolder currentFolder;
     private DocumentStorageManager storageManager;
+    private ScanSession scanSession;
+    private ScanSession.Listener sessionListener;
+    private Button scanButton;
+    private ScrollPrefetchHelper thumbnailPrefetcher;
+    private CatalogQuery.SortKey sortKey = CatalogQuery.SortKey.DATE;
+    private boolean sortDescending = true;
+    private int loadedPages = 1;
+    private boolean hasMoreFolders;
+    // Bumped by every full reload so a late "Load more" result isn't appended to new rows
+    private int queryGeneration;
+    private Button loadMoreButton;
+    private List<Uri> thumbnailUris = new ArrayList<>();
+    private List<ImageView> thumbnailViews = new ArrayList<>();
 
     private final ActivityResultLauncher<IntentSenderRequest> scannerLauncher =
             registerForActivityResult(
@@ -52,41 +70,25 @@ public class MainActivity extends AppCompatActivity {
                             GmsDocumentScanningResult scanningResult =
                                     GmsDocumentScanningResult.fromActivityResultIntent(result.getData());
 
-                            if (scanningResult != null) {
-                                // Create a new folder for this scan
-                                currentFolder = new DocumentFolder();
-
-                                // Prompt user to name the folder
-                                showFolderNameDialog(currentFolder);
-
-                                if (scanningResult.getPages() != null && !scanningResult.getPages().isEmpty()) {
-                                    // Add each scanned page to the folder
-                                    for (int i = 0; i < scanningResult.getPages().size(); i++) {
-                                        Uri pageUri = scanningResult.getPages().get(i).getImageUri();
-                                        currentFolder.addDocument(new ScannedDocument(pageUri));
-                                    }
+                            if (scanningResult != null && scanningResult.getPages() != null
+                                    && !scanningResult.getPages().isEmpty()) {
+                                List<Uri> pageUris = new ArrayList<>();
+                                for (GmsDocumentScanningResult.Page page : scanningResult.getPages()) {
+                                    pageUris.add(page.getImageUri());
                                 }
 
-                                if (scanningResult.getPdf() != null) {
-                                    try {
-                                        // Save PDF
-                                        InputStream inputStream = getContentResolver().openInputStream(scanningResult.getPdf().getUri());
-                                        if (inputStream != null) {
-                                            File pdfFile = storageManager.savePdf(inputStream, currentFolder.getUniqueId(), currentFolder.getName());
-
-                                            Toast.makeText(getApplicationContext(),
-                                                    "PDF saved with " + scanningResult.getPdf().getPageCount() + " pages",
-                                                    Toast.LENGTH_SHORT).show();
-                                        }
-                                    } catch (Exception e) {
-                                        Toast.makeText(getApplicationContext(), e.getMessage(), Toast.LENGTH_LONG).show();
-                                    }
+                                String folderId = scanSession.getFolderId();
+                                if (folderId == null) {
+                                    // Outside a session every scan gets a new folder
+                                    currentFolder = new DocumentFolder();
+                                    storageManager.updateFolder(currentFolder);
+                                    showFolderNameDialog(currentFolder);
+                                    folderId = currentFolder.getUniqueId();
                                 }
 
-                                // Add the folder to our list and display it
-                                documentFolders.add(currentFolder);
-                                storageManager.updateFolder(currentFolder);
-                                displayDocumentFolders();
+                                // Pages are copied and added to the PDF in the background
+                                scanSession.submit(folderId, pageUris);
+                                loadFolders();
                             }
                         }
                     }
@@ -108,19 +110,19 @@ public class MainActivity extends AppCompatActivity {
 
         // Initialize storage manager
         storageManager = new DocumentStorageManager(this);
+        scanSession = ScanSession.get(this);
 
+        foldersScroll = findViewById(R.id.folders_scroll);
         foldersContainer = findViewById(R.id.folders_container);
-        Button scanButton = findViewById(R.id.scan_button);
+        scanButton = findViewById(R.id.scan_button);
 
         // Configure the document scanner options
         GmsDocumentScannerOptions options = new GmsDocumentScannerOptions.Builder()
                 .setScannerMode(GmsDocumentScannerOptions.SCANNER_MODE_FULL)
-                .setPageLimit(5) // Increased page limit
+                .setPageLimit(ScanSession.PAGE_LIMIT)
                 .setGalleryImportAllowed(true) // Allow gallery import
-                .setResultFormats(
-                        GmsDocumentScannerOptions.RESULT_FORMAT_JPEG,
-                        GmsDocumentScannerOptions.RESULT_FORMAT_PDF
-                )
+                // The folder PDF is built from the JPEGs as batches are ingested
+                .setResultFormats(GmsDocumentScannerOptions.RESULT_FORMAT_JPEG)
                 .build();
 
         // Get the scanner client
@@ -128,6 +130,13 @@ public class MainActivity extends AppCompatActivity {
 
         // Set up the scan button
         scanButton.setOnClickListener(view -> {
+            // Backpressure: wait for earlier batches to drain before taking more pages
+            if (!scanSession.canStartScan()) {
+                Toast.makeText(getApplicationContext(),
+                        "Still processing " + scanSession.getPendingPages() + " pages, please wait",
+                        Toast.LENGTH_SHORT).show();
+                return;
+            }
             scanner.getStartScanIntent(this)
                     .addOnSuccessListener(new OnSuccessListener<IntentSender>() {
                         @Override
@@ -144,6 +153,26 @@ public class MainActivity extends AppCompatActivity {
                     });
         });
 
+        // The session outlives this activity, follow it while we're here
+        sessionListener = new ScanSession.Listener() {
+            @Override
+            public void onSessionChanged() {
+                updateScanButton();
+                invalidateOptionsMenu();
+            }
+
+            @Override
+            public void onFolderUpdated(String folderId, boolean success) {
+                if (!success) {
+                    Toast.makeText(getApplicationContext(), "Some scanned pages could not be saved",
+                            Toast.LENGTH_LONG).show();
+                }
+                loadFolders();
+            }
+        };
+        scanSession.addListener(sessionListener);
+        updateScanButton();
+
         // Load existing folders
         loadFolders();
     }
@@ -154,9 +183,129 @@ public class MainActivity extends AppCompatActivity {
         loadFolders();
     }
 
+    @Override
+    protected void onDestroy() {
+        scanSession.removeListener(sessionListener);
+        if (thumbnailPrefetcher != null) {
+            thumbnailPrefetcher.detach();
+            thumbnailPrefetcher = null;
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem sessionItem = menu.findItem(R.id.action_scan_session);
+        if (sessionItem != null) {
+            sessionItem.setTitle(scanSession.isActive() ? "Finish Scan Session" : "Start Scan Session");
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        int id = item.getItemId();
+
+        if (id == R.id.action_scan_session) {
+            if (scanSession.isActive()) {
+                scanSession.finish();
+            } else {
+                startScanSession();
+            }
+            return true;
+        } else if (id == R.id.action_sort_date) {
+            changeSort(CatalogQuery.SortKey.DATE, true);
+            return true;
+        } else if (id == R.id.action_sort_name) {
+            changeSort(CatalogQuery.SortKey.NAME, false);
+            return true;
+        } else if (id == R.id.action_sort_pages) {
+            changeSort(CatalogQuery.SortKey.PAGE_COUNT, true);
+            return true;
+        } else if (id == R.id.action_sort_size) {
+            changeSort(CatalogQuery.SortKey.SIZE, true);
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void changeSort(CatalogQuery.SortKey key, boolean descending) {
+        sortKey = key;
+        sortDescending = descending;
+        loadedPages = 1;
+        loadFolders();
+    }
+
+    // Reload every page shown so far, e.g. after a folder changed
     private void loadFolders() {
-        documentFolders = storageManager.loadFolders();
-        displayDocumentFolders();
+        // Ask for one extra folder to find out whether there is another page
+        final int limit = loadedPages * PAGE_SIZE;
+        final int generation = ++queryGeneration;
+        storageManager.queryFoldersAsync(new CatalogQuery()
+                .sortBy(sortKey, sortDescending)
+                .page(0, limit + 1), new DocumentStorageManager.QueryCallback() {
+            @Override
+            public void onFoldersLoaded(List<DocumentFolder> folders) {
+                if (generation != queryGeneration || isDestroyed()) {
+                    return;
+                }
+                hasMoreFolders = folders.size() > limit;
+                if (hasMoreFolders) {
+                    folders.remove(limit);
+                }
+                documentFolders = folders;
+                displayDocumentFolders();
+            }
+        });
+    }
+
+    // Fetch only the next page and append its rows below the ones already shown
+    private void loadMoreFolders() {
+        final int offset = loadedPages * PAGE_SIZE;
+        final int generation = queryGeneration;
+        storageManager.queryFoldersAsync(new CatalogQuery()
+                .sortBy(sortKey, sortDescending)
+                .page(offset, PAGE_SIZE + 1), new DocumentStorageManager.QueryCallback() {
+            @Override
+            public void onFoldersLoaded(List<DocumentFolder> folders) {
+                // A reload since we asked replaced the rows this page would follow
+                if (generation != queryGeneration || isDestroyed()) {
+                    return;
+                }
+                loadedPages++;
+                hasMoreFolders = folders.size() > PAGE_SIZE;
+                if (hasMoreFolders) {
+                    folders.remove(PAGE_SIZE);
+                }
+                appendFolderRows(folders);
+            }
+        });
+    }
+
+    // Every scan from now on is appended to one new folder until the session is finished
+    private void startScanSession() {
+        currentFolder = new DocumentFolder();
+        storageManager.updateFolder(currentFolder);
+        scanSession.start(currentFolder);
+        showFolderNameDialog(currentFolder);
+        loadFolders();
+    }
+
+    private void updateScanButton() {
+        String label = scanSession.isActive() ? "Scan More Pages" : "Scan Document";
+        int pending = scanSession.getPendingPages();
+        if (pending > 0) {
+            label += " (" + pending + " pages processing)";
+        }
+        scanButton.setText(label);
+        scanButton.setEnabled(scanSession.canStartScan());
     }
 
     private void showFolderNameDialog(final DocumentFolder folder) {
@@ -192,7 +341,13 @@ public class MainActivity extends AppCompatActivity {
 
     private void displayDocumentFolders() {
         foldersContainer.removeAllViews();
-        LayoutInflater inflater = getLayoutInflater();
+        if (thumbnailPrefetcher != null) {
+            thumbnailPrefetcher.detach();
+            thumbnailPrefetcher = null;
+        }
+        thumbnailUris = new ArrayList<>();
+        thumbnailViews = new ArrayList<>();
+        loadMoreButton = null;
 
         if (documentFolders.isEmpty()) {
             TextView emptyView = new TextView(this);
@@ -202,7 +357,46 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        for (DocumentFolder folder : documentFolders) {
+        // Thumbnails are 80dp squares (folder_item) and are bound as rows scroll into view
+        int thumbnailSize = (int) (80 * getResources().getDisplayMetrics().density);
+        addFolderRows(documentFolders);
+        final ScrollPrefetchHelper prefetcher = new ScrollPrefetchHelper(Glide.with(this),
+                ImageCacheGovernor.get(this), thumbnailUris,
+                ImageCacheGovernor.thumbnailOptions().centerCrop(),
+                thumbnailSize, thumbnailSize, 2, thumbnailSize * 4f);
+        updateLoadMoreButton();
+
+        thumbnailPrefetcher = prefetcher;
+        prefetcher.attach(foldersScroll, foldersContainer, position -> {
+            // Set a thumbnail if available
+            Uri thumbnailUri = thumbnailUris.get(position);
+            if (thumbnailUri != null) {
+                Glide.with(this)
+                        .load(thumbnailUri)
+                        .apply(prefetcher.getRequestOptions())
+                        .into(thumbnailViews.get(position));
+            }
+        });
+    }
+
+    private void appendFolderRows(List<DocumentFolder> folders) {
+        if (thumbnailPrefetcher == null) {
+            return;
+        }
+        documentFolders.addAll(folders);
+        addFolderRows(folders);
+        updateLoadMoreButton();
+        thumbnailPrefetcher.onItemsAppended();
+    }
+
+    // Inflate a row per folder at the end of the list, before the "Load more" button
+    private void addFolderRows(List<DocumentFolder> folders) {
+        if (loadMoreButton != null) {
+            foldersContainer.removeView(loadMoreButton);
+        }
+        LayoutInflater inflater = getLayoutInflater();
+
+        for (DocumentFolder folder : folders) {
             // Inflate a custom layout for each folder
             View folderView = inflater.inflate(R.layout.folder_item, foldersContainer, false);
 
@@ -217,12 +411,8 @@ public class MainActivity extends AppCompatActivity {
             folderTimestamp.setText(folder.getTimestamp());
             documentCount.setText(folder.getDocuments().size() + " pages");
 
-            // Set a thumbnail if available
-            if (!folder.getDocuments().isEmpty()) {
-                Glide.with(this)
-                        .load(folder.getDocuments().get(0).getImageUri())
-                        .into(thumbnailView);
-            }
+            thumbnailUris.add(folder.getDocuments().isEmpty() ? null : folder.getDocuments().get(0).getImageUri());
+            thumbnailViews.add(thumbnailView);
 
             // Set click listener to open folder
             folderCard.setOnClickListener(v -> openFolder(folder));
@@ -232,6 +422,22 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void updateLoadMoreButton() {
+        if (loadMoreButton != null) {
+            foldersContainer.removeView(loadMoreButton);
+            loadMoreButton = null;
+        }
+        if (hasMoreFolders) {
+            loadMoreButton = new Button(this);
+            loadMoreButton.setText("Load more");
+            loadMoreButton.setOnClickListener(v -> {
+                v.setEnabled(false);
+                loadMoreFolders();
+            });
+            foldersContainer.addView(loadMoreButton);
+        }
+    }
+
     private void openFolder(DocumentFolder folder) {
         if (folder != null && folder.getUniqueId() != null) {
             // Launch document viewer activity
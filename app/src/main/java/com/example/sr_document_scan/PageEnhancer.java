@@ -0,0 +1,269 @@
+package com.example.sr_document_scan;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+// Post-ingest stage that applies a folder's enhancement mode to every page and rebuilds
+// the folder's PDF from the results. Runs on the FolderWorker, one folder at a time and
+// never alongside ingest or page edits; the pixel work inside each page is split into
+// tiles on the fork-join pool.
+public class PageEnhancer {
+    private static final String TAG = "PageEnhancer";
+    private static final int JPEG_QUALITY = 85;
+
+    public interface Callback {
+        void onEnhanced(DocumentFolder folder, boolean success);
+    }
+
+    private final Context context;
+    private final DocumentStorageManager storageManager;
+    private final ImageEnhancer enhancer = new ImageEnhancer();
+
+    public PageEnhancer(@NonNull Context context, @NonNull DocumentStorageManager storageManager) {
+        this.context = context.getApplicationContext();
+        this.storageManager = storageManager;
+    }
+
+    // Label stored on a page for the enhancement it has, null when it is the original
+    public static String describe(ImageEnhancer.Mode mode, boolean deskew) {
+        if (mode == ImageEnhancer.Mode.ORIGINAL && !deskew) {
+            return null;
+        }
+        return deskew ? mode.name() + "+deskew" : mode.name();
+    }
+
+    public static boolean needsEnhancement(DocumentFolder folder) {
+        String target = describe(folder.getEnhancementMode(), folder.isDeskew());
+        for (ScannedDocument document : folder.getDocuments()) {
+            String current = document.getEnhancement();
+            if (target == null ? current != null : !target.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // What a page looked like when enhancement started. Rotation is part of it because
+    // it is written into the rebuilt PDF; a page rotated since then makes the result stale.
+    private static final class PageState {
+        final ScannedDocument page;
+        final Uri imageUri;
+        final int rotation;
+
+        PageState(ScannedDocument page) {
+            this.page = page;
+            this.imageUri = page.getImageUri();
+            this.rotation = page.getRotation();
+        }
+
+        boolean matches(ScannedDocument current) {
+            return current == page && imageUri.equals(current.getImageUri()) && rotation == current.getRotation();
+        }
+    }
+
+    // Everything the worker needs from the folder, read on the main thread
+    private static final class Job {
+        final List<PageState> pages = new ArrayList<>();
+        ImageEnhancer.Mode mode;
+        boolean deskew;
+        String label;
+        File folderDir;
+        File pdfFile;
+    }
+
+    // Bring every page of the folder up to its enhancement mode, queued behind any edits
+    // already on the worker. The folder is read, updated and saved on the main thread
+    // before the callback runs there.
+    public void enhance(final DocumentFolder folder, final Callback callback) {
+        FolderWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = false;
+                try {
+                    success = enhanceOnWorker(folder);
+                } catch (Exception e) {
+                    Log.e(TAG, "Enhancing folder " + folder.getUniqueId() + " failed: " + e.getMessage());
+                }
+
+                final boolean finished = success;
+                FolderWorker.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onEnhanced(folder, finished);
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean enhanceOnWorker(final DocumentFolder folder) throws Exception {
+        // Read the folder once edits queued before us have been applied
+        final Job job = FolderWorker.callOnMain(new Callable<Job>() {
+            @Override
+            public Job call() {
+                Job job = new Job();
+                for (ScannedDocument page : folder.getDocuments()) {
+                    job.pages.add(new PageState(page));
+                }
+                job.mode = folder.getEnhancementMode();
+                job.deskew = folder.isDeskew();
+                job.label = describe(job.mode, job.deskew);
+                job.folderDir = storageManager.getFolderDir(folder.getUniqueId());
+                job.pdfFile = storageManager.getPdfTarget(folder.getUniqueId(), folder.getName());
+                return job;
+            }
+        });
+
+        final List<Uri> newUris = new ArrayList<>();
+        final List<File> created = new ArrayList<>();
+        final File tempPdf = new File(job.folderDir, job.pdfFile.getName() + ".tmp");
+        long start = System.currentTimeMillis();
+
+        try (FileOutputStream pdfOut = new FileOutputStream(tempPdf)) {
+            JpegPdfWriter writer = new JpegPdfWriter(pdfOut);
+            for (PageState state : job.pages) {
+                ScannedDocument page = state.page;
+                byte[] jpeg;
+                Uri uri;
+                if (job.label == null) {
+                    uri = page.getOriginalUri();
+                    jpeg = readBytes(uri);
+                } else if (job.label.equals(page.getEnhancement())) {
+                    // Already done, e.g. pages from an earlier batch in this folder
+                    uri = state.imageUri;
+                    jpeg = readBytes(uri);
+                } else {
+                    jpeg = enhancePage(page.getOriginalUri(), job.mode, job.deskew);
+                    File file = new File(job.folderDir, "page_" + UUID.randomUUID() + ".jpg");
+                    try (FileOutputStream out = new FileOutputStream(file)) {
+                        out.write(jpeg);
+                    }
+                    created.add(file);
+                    uri = Uri.fromFile(file);
+                }
+                writer.addPage(jpeg, state.rotation);
+                newUris.add(uri);
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            discard(created, tempPdf);
+            Log.e(TAG, "Enhancing folder " + folder.getUniqueId() + " failed: " + e.getMessage());
+            return false;
+        }
+
+        Log.d(TAG, "Enhanced " + job.pages.size() + " pages as " + job.label + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        // Wait for the swap, so nothing queued after us sees the old PDF
+        return FolderWorker.callOnMain(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return apply(folder, job, newUris, created, tempPdf);
+            }
+        });
+    }
+
+    private boolean apply(DocumentFolder folder, Job job, List<Uri> newUris, List<File> created, File tempPdf) {
+        // Pages changed while we were working win, the result is thrown away
+        List<ScannedDocument> current = folder.getDocuments();
+        boolean stale = current.size() != job.pages.size();
+        for (int i = 0; !stale && i < current.size(); i++) {
+            stale = !job.pages.get(i).matches(current.get(i));
+        }
+        if (stale) {
+            Log.w(TAG, "Folder " + folder.getUniqueId() + " changed during enhancement, discarding the result");
+            discard(created, tempPdf);
+            return false;
+        }
+
+        List<Uri> replaced = new ArrayList<>();
+        for (int i = 0; i < current.size(); i++) {
+            ScannedDocument page = current.get(i);
+            if (!newUris.get(i).equals(page.getImageUri()) && !page.getImageUri().equals(page.getOriginalUri())) {
+                replaced.add(page.getImageUri());
+            }
+            page.setImageUri(newUris.get(i));
+            page.setEnhancement(job.label);
+        }
+        if (!tempPdf.renameTo(job.pdfFile)) {
+            Log.e(TAG, "Could not replace " + job.pdfFile.getName());
+        }
+        storageManager.updateFolder(folder);
+
+        // Enhanced images we made earlier are ours to delete, originals are kept
+        String folderPath = job.folderDir.getAbsolutePath();
+        for (Uri uri : replaced) {
+            if ("file".equals(uri.getScheme()) && uri.getPath() != null && uri.getPath().startsWith(folderPath)) {
+                new File(uri.getPath()).delete();
+            }
+        }
+        return true;
+    }
+
+    private static void discard(List<File> created, File tempPdf) {
+        for (File file : created) {
+            file.delete();
+        }
+        tempPdf.delete();
+    }
+
+    private byte[] enhancePage(Uri uri, ImageEnhancer.Mode mode, boolean deskew) throws IOException {
+        Bitmap bitmap;
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            bitmap = BitmapFactory.decodeStream(in);
+        }
+        if (bitmap == null) {
+            throw new IOException("Cannot decode " + uri);
+        }
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        int[] result = enhancer.enhance(pixels, width, height, mode, deskew);
+        Bitmap enhanced = Bitmap.createBitmap(result, width, height, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        enhanced.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        enhanced.recycle();
+        return out.toByteArray();
+    }
+
+    private byte[] readBytes(Uri uri) throws IOException {
+        InputStream inputStream = context.getContentResolver().openInputStream(uri);
+        if (inputStream == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return out.toByteArray();
+    }
+}
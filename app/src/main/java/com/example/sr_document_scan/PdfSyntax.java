@@ -0,0 +1,469 @@
+package com.example.sr_document_scan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the PDF object syntax to read and rewrite page tree objects.
+// Dictionaries are LinkedHashMap<String, Object> keyed by name without the slash,
+// arrays are List<Object>, numbers are Long or Double, and the rest use the classes below.
+public class PdfSyntax {
+
+    public static final Object NULL = new Object() {
+        @Override
+        public String toString() {
+            return "null";
+        }
+    };
+
+    public static final class Name {
+        public final String value;
+
+        public Name(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Name && ((Name) o).value.equals(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "/" + value;
+        }
+    }
+
+    public static final class Ref {
+        public final int number;
+        public final int generation;
+
+        public Ref(int number, int generation) {
+            this.number = number;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref && ((Ref) o).number == number && ((Ref) o).generation == generation;
+        }
+
+        @Override
+        public int hashCode() {
+            return number * 31 + generation;
+        }
+
+        @Override
+        public String toString() {
+            return number + " " + generation + " R";
+        }
+    }
+
+    public static final class Str {
+        public final byte[] bytes;
+
+        public Str(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Str && Arrays.equals(((Str) o).bytes, bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    // A stream object; data is the raw (still encoded) content
+    public static final class Stream {
+        public final Map<String, Object> dict;
+        public final byte[] data;
+
+        public Stream(Map<String, Object> dict, byte[] data) {
+            this.dict = dict;
+            this.data = data;
+        }
+    }
+
+    // Marks the "stream" keyword after a dictionary, the caller reads the data
+    static final class StreamStart {
+        final Map<String, Object> dict;
+        final int dataOffset;
+
+        StreamStart(Map<String, Object> dict, int dataOffset) {
+            this.dict = dict;
+            this.dataOffset = dataOffset;
+        }
+    }
+
+    public static boolean isWhitespace(int c) {
+        return c == 0 || c == 9 || c == 10 || c == 12 || c == 13 || c == 32;
+    }
+
+    public static boolean isDelimiter(int c) {
+        return c == '(' || c == ')' || c == '<' || c == '>' || c == '[' || c == ']'
+                || c == '{' || c == '}' || c == '/' || c == '%';
+    }
+
+    // Tokenizer and object parser over a byte buffer
+    public static class Parser {
+        private final byte[] data;
+        private final int end;
+        private int pos;
+
+        public Parser(byte[] data, int pos) {
+            this(data, pos, data.length);
+        }
+
+        public Parser(byte[] data, int pos, int end) {
+            this.data = data;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        public int position() {
+            return pos;
+        }
+
+        public void seek(int pos) {
+            this.pos = pos;
+        }
+
+        public boolean atEnd() {
+            skipWhitespace();
+            return pos >= end;
+        }
+
+        public void skipWhitespace() {
+            while (pos < end) {
+                int c = data[pos] & 0xff;
+                if (isWhitespace(c)) {
+                    pos++;
+                } else if (c == '%') {
+                    while (pos < end && data[pos] != '\n' && data[pos] != '\r') {
+                        pos++;
+                    }
+                } else {
+                    break;
+                }
+            }
+        }
+
+        // Reads a bare keyword or number token such as "obj", "xref", "n" or "12"
+        public String nextToken() throws IOException {
+            skipWhitespace();
+            int start = pos;
+            while (pos < end) {
+                int c = data[pos] & 0xff;
+                if (isWhitespace(c) || isDelimiter(c)) {
+                    break;
+                }
+                pos++;
+            }
+            if (start == pos) {
+                throw new IOException("Expected token at offset " + start);
+            }
+            return new String(data, start, pos - start, StandardCharsets.ISO_8859_1);
+        }
+
+        public void expectToken(String expected) throws IOException {
+            String token = nextToken();
+            if (!token.equals(expected)) {
+                throw new IOException("Expected '" + expected + "' but found '" + token + "'");
+            }
+        }
+
+        public Object nextObject() throws IOException {
+            skipWhitespace();
+            if (pos >= end) {
+                throw new IOException("Unexpected end of data");
+            }
+            int c = data[pos] & 0xff;
+            switch (c) {
+                case '/':
+                    return readName();
+                case '(':
+                    return readLiteralString();
+                case '[':
+                    return readArray();
+                case '<':
+                    if (pos + 1 < end && data[pos + 1] == '<') {
+                        return readDictionaryOrStream();
+                    }
+                    return readHexString();
+                default:
+                    break;
+            }
+
+            String token = nextToken();
+            if (token.equals("true")) {
+                return Boolean.TRUE;
+            } else if (token.equals("false")) {
+                return Boolean.FALSE;
+            } else if (token.equals("null")) {
+                return NULL;
+            }
+
+            Object number = parseNumber(token);
+            if (number instanceof Long) {
+                // "n g R" is a reference, look ahead without consuming anything else
+                int save = pos;
+                try {
+                    String second = nextToken();
+                    Object generation = parseNumber(second);
+                    if (generation instanceof Long) {
+                        String third = nextToken();
+                        if (third.equals("R")) {
+                            return new Ref(((Long) number).intValue(), ((Long) generation).intValue());
+                        }
+                    }
+                } catch (IOException ignored) {
+                    // Not a reference
+                }
+                pos = save;
+            }
+            return number;
+        }
+
+        private Object parseNumber(String token) throws IOException {
+            try {
+                if (token.indexOf('.') >= 0) {
+                    return Double.parseDouble(token);
+                }
+                return Long.parseLong(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Unexpected token '" + token + "'");
+            }
+        }
+
+        private Name readName() {
+            pos++; // skip '/'
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            while (pos < end) {
+                int c = data[pos] & 0xff;
+                if (isWhitespace(c) || isDelimiter(c)) {
+                    break;
+                }
+                if (c == '#' && pos + 2 < end) {
+                    out.write(Integer.parseInt(new String(data, pos + 1, 2, StandardCharsets.ISO_8859_1), 16));
+                    pos += 3;
+                } else {
+                    out.write(c);
+                    pos++;
+                }
+            }
+            return new Name(new String(out.toByteArray(), StandardCharsets.ISO_8859_1));
+        }
+
+        private Str readLiteralString() throws IOException {
+            pos++; // skip '('
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int depth = 1;
+            while (pos < end) {
+                int c = data[pos++] & 0xff;
+                if (c == '\\') {
+                    if (pos >= end) {
+                        break;
+                    }
+                    int e = data[pos++] & 0xff;
+                    switch (e) {
+                        case 'n': out.write('\n'); break;
+                        case 'r': out.write('\r'); break;
+                        case 't': out.write('\t'); break;
+                        case 'b': out.write('\b'); break;
+                        case 'f': out.write('\f'); break;
+                        case '\r':
+                            if (pos < end && data[pos] == '\n') {
+                                pos++;
+                            }
+                            break;
+                        case '\n':
+                            break;
+                        default:
+                            if (e >= '0' && e <= '7') {
+                                int value = e - '0';
+                                for (int i = 0; i < 2 && pos < end && data[pos] >= '0' && data[pos] <= '7'; i++) {
+                                    value = value * 8 + (data[pos++] - '0');
+                                }
+                                out.write(value & 0xff);
+                            } else {
+                                out.write(e);
+                            }
+                            break;
+                    }
+                } else if (c == '(') {
+                    depth++;
+                    out.write(c);
+                } else if (c == ')') {
+                    if (--depth == 0) {
+                        return new Str(out.toByteArray());
+                    }
+                    out.write(c);
+                } else {
+                    out.write(c);
+                }
+            }
+            throw new IOException("Unterminated string");
+        }
+
+        private Str readHexString() throws IOException {
+            pos++; // skip '<'
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int high = -1;
+            while (pos < end) {
+                int c = data[pos++] & 0xff;
+                if (c == '>') {
+                    if (high >= 0) {
+                        out.write(high << 4);
+                    }
+                    return new Str(out.toByteArray());
+                }
+                int digit = Character.digit(c, 16);
+                if (digit < 0) {
+                    continue;
+                }
+                if (high < 0) {
+                    high = digit;
+                } else {
+                    out.write((high << 4) | digit);
+                    high = -1;
+                }
+            }
+            throw new IOException("Unterminated hex string");
+        }
+
+        private List<Object> readArray() throws IOException {
+            pos++; // skip '['
+            List<Object> array = new ArrayList<>();
+            while (true) {
+                skipWhitespace();
+                if (pos >= end) {
+                    throw new IOException("Unterminated array");
+                }
+                if (data[pos] == ']') {
+                    pos++;
+                    return array;
+                }
+                array.add(nextObject());
+            }
+        }
+
+        private Object readDictionaryOrStream() throws IOException {
+            pos += 2; // skip '<<'
+            Map<String, Object> dict = new LinkedHashMap<>();
+            while (true) {
+                skipWhitespace();
+                if (pos + 1 >= end) {
+                    throw new IOException("Unterminated dictionary");
+                }
+                if (data[pos] == '>' && data[pos + 1] == '>') {
+                    pos += 2;
+                    break;
+                }
+                Object key = nextObject();
+                if (!(key instanceof Name)) {
+                    throw new IOException("Dictionary key is not a name: " + key);
+                }
+                dict.put(((Name) key).value, nextObject());
+            }
+
+            // A dictionary followed by "stream" is a stream object
+            int save = pos;
+            skipWhitespace();
+            if (pos + 6 <= end && new String(data, pos, 6, StandardCharsets.ISO_8859_1).equals("stream")) {
+                pos += 6;
+                if (pos < end && data[pos] == '\r') {
+                    pos++;
+                }
+                if (pos < end && data[pos] == '\n') {
+                    pos++;
+                }
+                return new StreamStart(dict, pos);
+            }
+            pos = save;
+            return dict;
+        }
+    }
+
+    // Serialize a parsed value back to PDF syntax
+    public static void write(Object value, ByteArrayOutputStream out) {
+        if (value instanceof Map) {
+            out.write('<');
+            out.write('<');
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writeName((String) entry.getKey(), out);
+                out.write(' ');
+                write(entry.getValue(), out);
+                out.write(' ');
+            }
+            out.write('>');
+            out.write('>');
+        } else if (value instanceof List) {
+            out.write('[');
+            boolean first = true;
+            for (Object item : (List<?>) value) {
+                if (!first) {
+                    out.write(' ');
+                }
+                write(item, out);
+                first = false;
+            }
+            out.write(']');
+        } else if (value instanceof Name) {
+            writeName(((Name) value).value, out);
+        } else if (value instanceof Str) {
+            writeAscii("<", out);
+            for (byte b : ((Str) value).bytes) {
+                writeAscii(String.format("%02x", b & 0xff), out);
+            }
+            writeAscii(">", out);
+        } else if (value instanceof Double || value instanceof Float) {
+            writeAscii(BigDecimal.valueOf(((Number) value).doubleValue()).stripTrailingZeros().toPlainString(), out);
+        } else {
+            // Long, Integer, Boolean, Ref and NULL all print as themselves
+            writeAscii(String.valueOf(value), out);
+        }
+    }
+
+    private static void writeName(String name, ByteArrayOutputStream out) {
+        out.write('/');
+        for (byte b : name.getBytes(StandardCharsets.ISO_8859_1)) {
+            int c = b & 0xff;
+            if (c < 0x21 || c > 0x7e || c == '#' || isDelimiter(c)) {
+                writeAscii(String.format("#%02X", c), out);
+            } else {
+                out.write(c);
+            }
+        }
+    }
+
+    public static void writeAscii(String text, ByteArrayOutputStream out) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    public static byte[] toBytes(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(value, out);
+        return out.toByteArray();
+    }
+}
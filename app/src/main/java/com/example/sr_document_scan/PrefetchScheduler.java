@@ -0,0 +1,220 @@
+package com.example.sr_document_scan;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// Decides which off-screen items should be decoded ahead of the user, based on the
+// direction and speed of the last scroll. The actual loading is done by a Loader.
+public class PrefetchScheduler {
+
+    public interface Loader {
+        // Start a low priority load of the item at this position
+        void prefetch(int position);
+
+        // Drop a load that was started by prefetch()
+        void cancel(int position);
+    }
+
+    private final Loader loader;
+    private final int maxPrefetch;
+    private final float velocityPerExtraItem;
+    private final long bytesPerItem;
+
+    private int itemCount;
+    private int prefetchCap;
+
+    private int firstVisible = -1;
+    private int lastVisible = -1;
+    private int direction = 1;
+    private long lastEventTime = -1;
+
+    // Positions we asked the loader for that have not been shown or cancelled yet, mapped
+    // to whether their load has finished
+    private final Map<Integer, Boolean> outstanding = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long issued;
+    private long cancelled;
+
+    // maxPrefetch is the largest N we prefetch ahead, velocityPerExtraItem is the scroll
+    // speed (units per second) that earns one more item, and the memory budget caps N so
+    // that N * bytesPerItem never exceeds it
+    public PrefetchScheduler(Loader loader, int itemCount, int maxPrefetch,
+                             float velocityPerExtraItem, long memoryBudgetBytes, long bytesPerItem) {
+        this.loader = loader;
+        this.itemCount = itemCount;
+        this.maxPrefetch = maxPrefetch;
+        this.velocityPerExtraItem = velocityPerExtraItem;
+        this.bytesPerItem = Math.max(1, bytesPerItem);
+        setMemoryBudget(memoryBudgetBytes);
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+        Iterator<Integer> it = outstanding.keySet().iterator();
+        while (it.hasNext()) {
+            int position = it.next();
+            if (position >= itemCount) {
+                loader.cancel(position);
+                cancelled++;
+                it.remove();
+            }
+        }
+    }
+
+    // Recompute how many items we may hold ahead of the viewport for the given budget
+    public void setMemoryBudget(long memoryBudgetBytes) {
+        long fit = Math.max(0, memoryBudgetBytes) / bytesPerItem;
+        prefetchCap = (int) Math.min(maxPrefetch, fit);
+    }
+
+    public int getPrefetchCap() {
+        return prefetchCap;
+    }
+
+    // The load started for this position has finished, so showing it now is a cache hit
+    public void onPrefetchCompleted(int position) {
+        if (outstanding.containsKey(position)) {
+            outstanding.put(position, true);
+        }
+    }
+
+    // Report the visible range after a scroll. delta is the distance scrolled since the
+    // previous event (positive means towards the end of the list), timeMs a monotonic clock.
+    public void onScrolled(int first, int last, int delta, long timeMs) {
+        if (itemCount <= 0 || first < 0 || last < first) {
+            return;
+        }
+
+        boolean firstEvent = firstVisible < 0;
+        int newDirection = delta > 0 ? 1 : (delta < 0 ? -1 : direction);
+        boolean reversed = newDirection != direction;
+
+        float velocity = 0f;
+        if (lastEventTime >= 0 && timeMs > lastEventTime) {
+            velocity = Math.abs(delta) * 1000f / (timeMs - lastEventTime);
+        }
+        lastEventTime = timeMs;
+
+        // Count every item that just came on screen as a hit or a miss. Only a finished
+        // prefetch is a hit, one still loading means the user waits all the same.
+        if (!firstEvent) {
+            for (int i = first; i <= last; i++) {
+                if (i >= firstVisible && i <= lastVisible) {
+                    continue;
+                }
+                if (Boolean.TRUE.equals(outstanding.remove(i))) {
+                    hits++;
+                } else {
+                    misses++;
+                }
+            }
+        }
+        for (int i = first; i <= last; i++) {
+            outstanding.remove(i);
+        }
+
+        firstVisible = first;
+        lastVisible = last;
+        direction = newDirection;
+
+        int depth = prefetchDepth(velocity);
+        int windowStart;
+        int windowEnd;
+        if (direction > 0) {
+            windowStart = last + 1;
+            windowEnd = Math.min(itemCount - 1, last + depth);
+        } else {
+            windowStart = Math.max(0, first - depth);
+            windowEnd = first - 1;
+        }
+
+        // The user turned around, so everything queued in the old direction is wasted work
+        if (reversed) {
+            Iterator<Integer> it = outstanding.keySet().iterator();
+            while (it.hasNext()) {
+                int position = it.next();
+                if (position < windowStart || position > windowEnd) {
+                    loader.cancel(position);
+                    cancelled++;
+                    it.remove();
+                }
+            }
+        } else {
+            // Items we flew past without stopping no longer count against the cap
+            Iterator<Integer> it = outstanding.keySet().iterator();
+            while (it.hasNext()) {
+                int position = it.next();
+                if (direction > 0 ? position < first : position > last) {
+                    it.remove();
+                }
+            }
+        }
+
+        // Nearest items first so they win the race for the loader
+        if (direction > 0) {
+            for (int i = windowStart; i <= windowEnd; i++) {
+                request(i);
+            }
+        } else {
+            for (int i = windowEnd; i >= windowStart; i--) {
+                request(i);
+            }
+        }
+    }
+
+    private int prefetchDepth(float velocity) {
+        if (prefetchCap <= 0) {
+            return 0;
+        }
+        int extra = velocityPerExtraItem > 0 ? (int) (velocity / velocityPerExtraItem) : 0;
+        return Math.min(prefetchCap, 1 + extra);
+    }
+
+    private void request(int position) {
+        if (outstanding.size() >= prefetchCap || outstanding.containsKey(position)) {
+            return;
+        }
+        outstanding.put(position, false);
+        issued++;
+        loader.prefetch(position);
+    }
+
+    // Cancel everything still queued, e.g. when the screen goes away
+    public void cancelAll() {
+        for (int position : outstanding.keySet()) {
+            loader.cancel(position);
+            cancelled++;
+        }
+        outstanding.clear();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getIssued() {
+        return issued;
+    }
+
+    public long getCancelled() {
+        return cancelled;
+    }
+
+    // Fraction of newly shown items whose prefetch had finished, used to tune maxPrefetch
+    public float getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0f : (float) hits / total;
+    }
+
+    public String getStats() {
+        return "prefetch hits=" + hits + " misses=" + misses + " issued=" + issued
+                + " cancelled=" + cancelled + " hitRate=" + getHitRate() + " cap=" + prefetchCap;
+    }
+}
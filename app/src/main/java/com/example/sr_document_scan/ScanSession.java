@@ -0,0 +1,535 @@
+package com.example.sr_document_scan;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Process-wide scan session. Scanner runs hand their pages over as batches; while a
+// session is active every batch is appended to the session's folder. Batches go through
+// a bounded IngestQueue so the next scan can start while earlier pages are still being
+// copied and added to the PDF. The session and its unfinished batches are journaled to
+// SharedPreferences and replayed when the process starts again after a crash.
+public class ScanSession implements IngestQueue.Processor, IngestQueue.Listener {
+    private static final String TAG = "ScanSession";
+    private static final String PREF_NAME = "scan_session";
+    private static final String KEY_STATE = "state";
+
+    // Pages one scanner run may return, and pages allowed in the queue at once
+    public static final int PAGE_LIMIT = 20;
+    public static final int QUEUE_CAPACITY_PAGES = 60;
+
+    // A batch that fails with an IOException is tried this many times, the delay doubling
+    // each time, and then left in the journal for the next start
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 2000;
+
+    // A batch that can never be ingested, it is dropped rather than retried
+    static class BatchRejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        BatchRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    // Called on the main thread
+    public interface Listener {
+        void onSessionChanged();
+
+        // Pages were added to or enhanced in a folder (or that failed)
+        void onFolderUpdated(String folderId, boolean success);
+    }
+
+    private static ScanSession instance;
+
+    private final Context context;
+    private final DocumentStorageManager storageManager;
+    private final PageEnhancer pageEnhancer;
+    private final IngestQueue queue;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Main thread state, mirrored to the journal on every change
+    private String sessionFolderId;
+    private final List<IngestBatch> journal = new ArrayList<>();
+    // Journaled batches the queue had no room for yet
+    private final List<IngestBatch> waiting = new ArrayList<>();
+    // Failed attempts of batches being retried, by batch id
+    private final Map<String, Integer> attempts = new HashMap<>();
+
+    private ScanSession(Context context) {
+        this.context = context.getApplicationContext();
+        this.storageManager = new DocumentStorageManager(this.context);
+        this.pageEnhancer = new PageEnhancer(this.context, storageManager);
+        // Shares the worker with page edits and enhancement so PDF writes never overlap
+        this.queue = new IngestQueue(QUEUE_CAPACITY_PAGES, this, FolderWorker.getExecutor());
+        queue.addListener(this);
+        restore();
+    }
+
+    // Must be called on the main thread
+    public static synchronized ScanSession get(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ScanSession(context);
+        }
+        return instance;
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isActive() {
+        return sessionFolderId != null;
+    }
+
+    @Nullable
+    public String getFolderId() {
+        return sessionFolderId;
+    }
+
+    // Start appending every scan to this folder
+    public void start(@NonNull DocumentFolder folder) {
+        sessionFolderId = folder.getUniqueId();
+        saveJournal();
+        notifySessionChanged();
+    }
+
+    // Stop the session, batches already handed over are still ingested
+    public void finish() {
+        sessionFolderId = null;
+        saveJournal();
+        notifySessionChanged();
+    }
+
+    // Backpressure for the UI: false while a full scanner run would not fit in the queue
+    public boolean canStartScan() {
+        return waiting.isEmpty() && queue.hasRoomFor(PAGE_LIMIT);
+    }
+
+    public int getPendingPages() {
+        int pages = queue.getPendingPages();
+        for (IngestBatch batch : waiting) {
+            pages += batch.getPageCount();
+        }
+        return pages;
+    }
+
+    // Hand over the pages of one scanner run. They are journaled before anything else
+    // happens, so they are not lost if the process dies before they are processed.
+    public void submit(@NonNull String folderId, @NonNull List<Uri> pageUris) {
+        if (pageUris.isEmpty()) {
+            return;
+        }
+        List<String> uris = new ArrayList<>();
+        for (Uri uri : pageUris) {
+            uris.add(uri.toString());
+        }
+
+        IngestBatch batch = new IngestBatch(UUID.randomUUID().toString(), folderId, uris);
+        journal.add(batch);
+        saveJournal();
+        enqueue(batch);
+        notifySessionChanged();
+    }
+
+    private void enqueue(IngestBatch batch) {
+        if (!waiting.isEmpty() || !queue.offer(batch)) {
+            Log.d(TAG, "Queue full, holding batch " + batch.getId());
+            waiting.add(batch);
+        }
+    }
+
+    // --- IngestQueue.Processor, on the worker thread ---
+
+    @Override
+    public void process(final IngestBatch batch) throws Exception {
+        long start = System.currentTimeMillis();
+
+        // Looked up here, the main thread hops below only use the folder object
+        final DocumentFolder folder = storageManager.getFolderById(batch.getFolderId());
+        File folderDir = storageManager.getFolderDir(batch.getFolderId());
+        // Names are fixed per batch, so a batch replayed after a crash reuses what was
+        // already copied
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < batch.getPageCount(); i++) {
+            files.add(new File(folderDir, "page_" + batch.getId() + "_" + i + ".jpg"));
+        }
+        if (folder == null) {
+            discardCopies(files, new ArrayList<File>());
+            throw new BatchRejectedException("Folder " + batch.getFolderId() + " no longer exists");
+        }
+
+        // Pages the folder had before this batch, and this batch's pages it already has
+        // (a replayed batch may already be in it)
+        final List<File> inFolder = new ArrayList<>();
+        int basePages = FolderWorker.callOnMain(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                int count = 0;
+                for (ScannedDocument document : folder.getDocuments()) {
+                    File file = fileOf(document.getOriginalUri());
+                    if (files.contains(file)) {
+                        inFolder.add(file);
+                    } else {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        });
+
+        try {
+            // Copy the pages out of the scanner's cache
+            if (!folderDir.exists() && !folderDir.mkdirs()) {
+                throw new IOException("Cannot create " + folderDir);
+            }
+            for (int i = 0; i < files.size(); i++) {
+                if (!files.get(i).exists()) {
+                    copy(Uri.parse(batch.getPageUris().get(i)), files.get(i));
+                }
+            }
+            appendToPdf(folder, files, basePages);
+        } catch (IOException e) {
+            // Kept for a retry, which reuses the copies
+            throw e;
+        } catch (Exception e) {
+            discardCopies(files, inFolder);
+            throw e;
+        }
+
+        FolderWorker.callOnMain(new Callable<Void>() {
+            @Override
+            public Void call() {
+                List<File> present = new ArrayList<>();
+                for (ScannedDocument document : folder.getDocuments()) {
+                    present.add(fileOf(document.getOriginalUri()));
+                }
+                for (File file : files) {
+                    if (!present.contains(file)) {
+                        folder.addDocument(new ScannedDocument(Uri.fromFile(file)));
+                    }
+                }
+                storageManager.updateFolder(folder);
+
+                // Same stage a single scan goes through, queued behind this batch
+                if (PageEnhancer.needsEnhancement(folder)) {
+                    pageEnhancer.enhance(folder, new PageEnhancer.Callback() {
+                        @Override
+                        public void onEnhanced(DocumentFolder enhancedFolder, boolean success) {
+                            for (Listener listener : listeners) {
+                                listener.onFolderUpdated(enhancedFolder.getUniqueId(), success);
+                            }
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+
+        Log.d(TAG, "Ingested " + files.size() + " pages into " + batch.getFolderId() + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // Add the batch to the end of the folder's PDF, or write the PDF if this is the first
+    // batch. Throws rather than leave the PDF behind the folder's page list.
+    private void appendToPdf(DocumentFolder folder, List<File> files, int basePages)
+            throws IOException, BatchRejectedException {
+        String folderId = folder.getUniqueId();
+        // Looked up by id, the file keeps its name when the folder is renamed
+        File pdfFile = storageManager.getPdfFile(folderId);
+
+        if (pdfFile == null) {
+            if (basePages > 0) {
+                throw new BatchRejectedException("Folder " + folderId + " has " + basePages + " pages but no PDF");
+            }
+            pdfFile = storageManager.getPdfTarget(folderId, folder.getName());
+            File tempPdf = new File(pdfFile.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tempPdf)) {
+                JpegPdfWriter writer = new JpegPdfWriter(out);
+                for (File file : files) {
+                    writer.addPage(readBytes(file), 0);
+                }
+                writer.finish();
+            }
+            if (!tempPdf.renameTo(pdfFile)) {
+                throw new IOException("Cannot write " + pdfFile);
+            }
+            return;
+        }
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        if (pdf.getPageCount() == basePages + files.size()) {
+            return; // Appended before a crash, the folder just hadn't been saved yet
+        }
+        if (pdf.getPageCount() != basePages) {
+            throw new BatchRejectedException("PDF has " + pdf.getPageCount() + " pages but folder has " + basePages);
+        }
+        for (File file : files) {
+            pdf.insertJpegPage(pdf.getPageCount(), readBytes(file));
+        }
+        pdf.commit();
+    }
+
+    // --- IngestQueue.Listener, on the worker thread ---
+
+    @Override
+    public void onBatchFinished(final IngestBatch batch, @Nullable final Exception error) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                boolean finished = true;
+                if (error instanceof IOException) {
+                    finished = !retryLater(batch);
+                } else {
+                    if (error != null) {
+                        Log.e(TAG, "Batch " + batch.getId() + " could not be ingested, dropping it", error);
+                    }
+                    journal.remove(batch);
+                    attempts.remove(batch.getId());
+                }
+                // Move held batches into the queue now that there is room
+                Iterator<IngestBatch> iterator = waiting.iterator();
+                while (iterator.hasNext()) {
+                    IngestBatch next = iterator.next();
+                    if (!queue.offer(next)) {
+                        break;
+                    }
+                    iterator.remove();
+                }
+                saveJournal();
+                if (finished) {
+                    for (Listener listener : listeners) {
+                        listener.onFolderUpdated(batch.getFolderId(), error == null);
+                    }
+                }
+                notifySessionChanged();
+            }
+        });
+    }
+
+    // Queue a batch that failed with an IOException again after a delay. False once it has
+    // used up its attempts; it then stays journaled and is replayed on the next start.
+    private boolean retryLater(final IngestBatch batch) {
+        Integer previous = attempts.get(batch.getId());
+        int attempt = previous == null ? 1 : previous + 1;
+        if (attempt >= MAX_ATTEMPTS) {
+            Log.e(TAG, "Batch " + batch.getId() + " failed " + attempt + " times, keeping it for the next start");
+            attempts.remove(batch.getId());
+            return false;
+        }
+        attempts.put(batch.getId(), attempt);
+
+        long delay = RETRY_DELAY_MS << (attempt - 1);
+        Log.w(TAG, "Batch " + batch.getId() + " failed, retrying in " + delay + " ms");
+        mainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (journal.contains(batch)) {
+                    enqueue(batch);
+                    notifySessionChanged();
+                }
+            }
+        }, delay);
+        return true;
+    }
+
+    @Override
+    public void onQueueChanged(int pendingPages) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                notifySessionChanged();
+            }
+        });
+    }
+
+    private void notifySessionChanged() {
+        for (Listener listener : listeners) {
+            listener.onSessionChanged();
+        }
+    }
+
+    // --- Journal ---
+
+    private void saveJournal() {
+        try {
+            JSONObject state = new JSONObject();
+            if (sessionFolderId != null) {
+                state.put("folderId", sessionFolderId);
+            }
+            JSONArray batches = new JSONArray();
+            for (IngestBatch batch : journal) {
+                JSONObject batchObj = new JSONObject();
+                batchObj.put("id", batch.getId());
+                batchObj.put("folderId", batch.getFolderId());
+                batchObj.put("uris", new JSONArray(batch.getPageUris()));
+                batches.put(batchObj);
+            }
+            state.put("batches", batches);
+
+            // commit() rather than apply(): the journal is only useful if it reaches disk
+            context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).edit()
+                    .putString(KEY_STATE, state.toString())
+                    .commit();
+        } catch (JSONException e) {
+            Log.e(TAG, "Error saving scan session: " + e.getMessage());
+        }
+    }
+
+    // Pick up the session and replay the batches left over from the last process. Runs
+    // in Application.onCreate, so it only reads the small journal; the catalog is left
+    // alone when nothing is pending and otherwise only read on the worker.
+    private void restore() {
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        String json = prefs.getString(KEY_STATE, null);
+        if (json == null) {
+            return;
+        }
+
+        String folderId = null;
+        try {
+            JSONObject state = new JSONObject(json);
+            folderId = state.optString("folderId", null);
+
+            JSONArray batches = state.optJSONArray("batches");
+            for (int i = 0; batches != null && i < batches.length(); i++) {
+                JSONObject batchObj = batches.getJSONObject(i);
+                JSONArray urisArray = batchObj.getJSONArray("uris");
+                List<String> uris = new ArrayList<>();
+                for (int j = 0; j < urisArray.length(); j++) {
+                    uris.add(urisArray.getString(j));
+                }
+                journal.add(new IngestBatch(batchObj.getString("id"), batchObj.getString("folderId"), uris));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error restoring scan session: " + e.getMessage());
+        }
+
+        if (folderId != null) {
+            sessionFolderId = folderId;
+            checkSessionFolder(folderId);
+        }
+        if (!journal.isEmpty()) {
+            Log.d(TAG, "Replaying " + journal.size() + " unfinished batches");
+        }
+        for (IngestBatch batch : journal) {
+            enqueue(batch);
+        }
+    }
+
+    // End a restored session whose folder is gone. The lookup may load the catalog, so
+    // it is done on the worker.
+    private void checkSessionFolder(final String folderId) {
+        FolderWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (storageManager.getFolderById(folderId) != null) {
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (folderId.equals(sessionFolderId)) {
+                            Log.w(TAG, "Session folder " + folderId + " no longer exists, ending the session");
+                            finish();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // --- Helpers ---
+
+    // Delete the pages a dropped batch copied, keeping any the folder already shows
+    private static void discardCopies(List<File> files, List<File> keep) {
+        for (File file : files) {
+            if (keep.contains(file)) {
+                continue;
+            }
+            File temp = new File(file.getPath() + ".tmp");
+            if ((file.exists() && !file.delete()) || (temp.exists() && !temp.delete())) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }
+    }
+
+    @Nullable
+    private static File fileOf(Uri uri) {
+        if (uri == null || !"file".equals(uri.getScheme()) || uri.getPath() == null) {
+            return null;
+        }
+        return new File(uri.getPath());
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                offset += read;
+            }
+        }
+        return data;
+    }
+
+    private void copy(Uri source, File target) throws IOException, BatchRejectedException {
+        File temp = new File(target.getPath() + ".tmp");
+        InputStream input;
+        try {
+            input = context.getContentResolver().openInputStream(source);
+        } catch (FileNotFoundException e) {
+            // The scanner's cache was cleared, trying again won't bring the page back
+            throw new BatchRejectedException("Scanned page " + source + " is gone");
+        }
+        try (InputStream in = input;
+             OutputStream out = new FileOutputStream(temp)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + source);
+            }
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!temp.renameTo(target)) {
+            throw new IOException("Cannot write " + target);
+        }
+    }
+}
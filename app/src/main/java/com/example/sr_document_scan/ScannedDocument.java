@@ -8,29 +8,71 @@ import java.util.Locale;
 
 public class ScannedDocument {
     private Uri imageUri;
+    private Uri originalUri;
+    private String enhancement;
     private String timestamp;
+    private long createdAt;
     private String name;
+    private int rotation;
 
     public ScannedDocument(Uri imageUri) {
         this.imageUri = imageUri;
+        this.originalUri = imageUri;
+
+        this.createdAt = System.currentTimeMillis();
 
         // Create timestamp in the format: Apr 23, 2025 14:30:45
         SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.getDefault());
-        this.timestamp = sdf.format(new Date());
+        this.timestamp = sdf.format(new Date(createdAt));
 
         // Create a default name using timestamp
         SimpleDateFormat nameSdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
-        this.name = "Page_" + nameSdf.format(new Date());
+        this.name = "Page_" + nameSdf.format(new Date(createdAt));
     }
 
     public Uri getImageUri() {
         return imageUri;
     }
 
+    public void setImageUri(Uri imageUri) {
+        this.imageUri = imageUri;
+    }
+
+    // The page as it came from the scanner, enhanced images are always made from this
+    public Uri getOriginalUri() {
+        return originalUri;
+    }
+
+    public void setOriginalUri(Uri originalUri) {
+        this.originalUri = originalUri;
+    }
+
+    // The enhancement applied to imageUri (see PageEnhancer.describe), null for the original
+    public String getEnhancement() {
+        return enhancement;
+    }
+
+    public void setEnhancement(String enhancement) {
+        this.enhancement = enhancement;
+    }
+
     public String getTimestamp() {
         return timestamp;
     }
 
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    // Creation time in epoch millis, timestamp is the same moment formatted for display
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public String getName() {
         return name;
     }
@@ -38,4 +80,13 @@ public class ScannedDocument {
     public void setName(String name) {
         this.name = name;
     }
+
+    // Clockwise rotation in degrees, always 0, 90, 180 or 270
+    public int getRotation() {
+        return rotation;
+    }
+
+    public void setRotation(int rotation) {
+        this.rotation = ((rotation % 360) + 360) % 360;
+    }
 }
\ No newline at end of file
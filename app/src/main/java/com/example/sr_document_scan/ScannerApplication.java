@@ -0,0 +1,63 @@
+package com.example.sr_document_scan;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+public class ScannerApplication extends Application {
+
+    private int startedActivities;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Parse the catalog and finish upgrading stored folder records in the background
+        DocumentStorageManager storageManager = new DocumentStorageManager(this);
+        storageManager.preloadCatalog();
+        storageManager.scheduleMigrationSweep();
+
+        // Replay scan batches left unfinished by a previous process
+        ScanSession.get(this);
+
+        // Shrink image caches on trim signals, restore them when we're visible again
+        final ImageCacheGovernor governor = ImageCacheGovernor.get(this);
+        registerComponentCallbacks(governor);
+        registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityStarted(@NonNull Activity activity) {
+                if (startedActivities++ == 0) {
+                    governor.onForeground();
+                }
+            }
+
+            @Override
+            public void onActivityStopped(@NonNull Activity activity) {
+                startedActivities--;
+            }
+
+            @Override
+            public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityResumed(@NonNull Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(@NonNull Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(@NonNull Activity activity) {
+            }
+        });
+    }
+}
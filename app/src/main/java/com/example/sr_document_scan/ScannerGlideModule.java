@@ -0,0 +1,65 @@
+package com.example.sr_document_scan;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.module.AppGlideModule;
+
+// Replaces Glide's default cache sizes with the budgets from ImageCacheGovernor
+@GlideModule
+public class ScannerGlideModule extends AppGlideModule {
+    private static final String TAG = "ScannerGlideModule";
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        ImageCacheGovernor governor = ImageCacheGovernor.get(context);
+        ImageCachePolicy policy = governor.getPolicy();
+
+        final LruResourceCache memoryCache = new LruResourceCache(policy.getMemoryCacheBytes());
+        final LruBitmapPool bitmapPool = new LruBitmapPool(policy.getBitmapPoolBytes());
+
+        builder.setMemoryCache(memoryCache);
+        builder.setBitmapPool(bitmapPool);
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, policy.getDiskCacheBytes()));
+        builder.setDefaultRequestOptions(ImageCacheGovernor.fullSizeOptions());
+
+        governor.addCache(new ImageCacheGovernor.Cache() {
+            @Override
+            public void setSizeMultiplier(float multiplier) {
+                memoryCache.setSizeMultiplier(multiplier);
+            }
+
+            @Override
+            public void clearMemory() {
+                memoryCache.clearMemory();
+            }
+        });
+        governor.addCache(new ImageCacheGovernor.Cache() {
+            @Override
+            public void setSizeMultiplier(float multiplier) {
+                bitmapPool.setSizeMultiplier(multiplier);
+            }
+
+            @Override
+            public void clearMemory() {
+                bitmapPool.clearMemory();
+            }
+        });
+
+        Log.d(TAG, "Image caches: memory=" + policy.getMemoryCacheBytes()
+                + " pool=" + policy.getBitmapPoolBytes()
+                + " disk=" + policy.getDiskCacheBytes());
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.sr_document_scan;
+
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewParent;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Connects a PrefetchScheduler to Glide and to a ScrollView holding one child per image.
+// Images are only bound once their row scrolls into view; the rows ahead of the user
+// are preloaded at low priority with the same RequestOptions, so the bind hits the cache.
+public class ScrollPrefetchHelper implements PrefetchScheduler.Loader {
+    private static final String TAG = "ScrollPrefetch";
+
+    // Largest number of rows/pages we decode ahead of the user
+    private static final int MAX_PREFETCH = 6;
+    // Fraction of the image memory cache that prefetched bitmaps may occupy
+    private static final int CACHE_FRACTION = 2;
+
+    public interface Binder {
+        // Load the real image for the row at this position
+        void bind(int position);
+    }
+
+    private final RequestManager requestManager;
+    private final ImageCacheGovernor governor;
+    private final List<Uri> uris;
+    private final RequestOptions options;
+    private final PrefetchScheduler scheduler;
+    private final SparseArray<Target<Drawable>> targets = new SparseArray<>();
+
+    private ScrollView scrollView;
+    private LinearLayout container;
+    private Binder binder;
+    private boolean[] bound;
+
+    // Re-cap N whenever memory pressure shrinks or restores the image cache
+    private final ImageCacheGovernor.Listener budgetListener = new ImageCacheGovernor.Listener() {
+        @Override
+        public void onMemoryBudgetChanged(long memoryCacheBytes) {
+            scheduler.setMemoryBudget(memoryCacheBytes / CACHE_FRACTION);
+        }
+    };
+
+    // velocityPerExtraItem is in the units later passed as scroll deltas (pixels for a
+    // ScrollView, pages for the full-screen viewer), per second
+    public ScrollPrefetchHelper(@NonNull RequestManager requestManager, @NonNull ImageCacheGovernor governor,
+                                @NonNull List<Uri> uris, @NonNull RequestOptions options,
+                                int widthPx, int heightPx, int bytesPerPixel, float velocityPerExtraItem) {
+        this.requestManager = requestManager;
+        this.governor = governor;
+        this.uris = uris;
+        this.options = options.override(widthPx, heightPx);
+        long bytesPerItem = (long) widthPx * heightPx * bytesPerPixel;
+        long budget = governor.getMemoryCacheBudget() / CACHE_FRACTION;
+        this.scheduler = new PrefetchScheduler(this, uris.size(), MAX_PREFETCH,
+                velocityPerExtraItem, budget, bytesPerItem);
+        governor.addListener(budgetListener);
+    }
+
+    // Options that every on-screen load must use so it shares cache keys with the prefetch
+    public RequestOptions getRequestOptions() {
+        return options;
+    }
+
+    public PrefetchScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Track the rows of container inside scrollView and bind images as they become visible
+    public void attach(@NonNull ScrollView scrollView, @NonNull LinearLayout container, @NonNull Binder binder) {
+        this.scrollView = scrollView;
+        this.container = container;
+        this.binder = binder;
+        this.bound = new boolean[uris.size()];
+
+        scrollView.setOnScrollChangeListener((v, scrollX, scrollY, oldScrollX, oldScrollY) ->
+                onViewportChanged(scrollY - oldScrollY));
+        // First pass once the rows have been laid out
+        scrollView.post(() -> onViewportChanged(0));
+    }
+
+    // Rows were appended to the container and their uris to the list given to the
+    // constructor. Only the new rows are bound as they come into view.
+    public void onItemsAppended() {
+        if (bound == null || scrollView == null) {
+            return;
+        }
+        bound = Arrays.copyOf(bound, uris.size());
+        scheduler.setItemCount(uris.size());
+        scrollView.post(() -> onViewportChanged(0));
+    }
+
+    // Used by pagers, which show exactly one item at a time
+    public void onPageShown(int position, int delta) {
+        scheduler.onScrolled(position, position, delta, SystemClock.uptimeMillis());
+    }
+
+    private void onViewportChanged(int delta) {
+        if (scrollView == null || container.getChildCount() == 0 || uris.isEmpty()) {
+            return;
+        }
+
+        int viewportTop = scrollView.getScrollY();
+        int viewportBottom = viewportTop + scrollView.getHeight();
+        int containerTop = offsetInScrollView(container);
+        int rows = Math.min(uris.size(), container.getChildCount());
+
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < rows; i++) {
+            View row = container.getChildAt(i);
+            int top = containerTop + row.getTop();
+            int bottom = containerTop + row.getBottom();
+            if (bottom > viewportTop && top < viewportBottom) {
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+            } else if (first >= 0) {
+                break;
+            }
+        }
+        if (first < 0) {
+            return;
+        }
+
+        for (int i = first; i <= last; i++) {
+            if (!bound[i]) {
+                bound[i] = true;
+                binder.bind(i);
+            }
+        }
+        scheduler.onScrolled(first, last, delta, SystemClock.uptimeMillis());
+    }
+
+    private int offsetInScrollView(View view) {
+        int top = 0;
+        View current = view;
+        while (current != null && current != scrollView) {
+            top += current.getTop();
+            ViewParent parent = current.getParent();
+            current = parent instanceof View ? (View) parent : null;
+        }
+        return top;
+    }
+
+    @Override
+    public void prefetch(int position) {
+        if (position < 0 || position >= uris.size() || uris.get(position) == null) {
+            return;
+        }
+        Target<Drawable> target = requestManager
+                .load(uris.get(position))
+                .apply(options)
+                .priority(Priority.LOW)
+                .listener(new RequestListener<Drawable>() {
+                    @Override
+                    public boolean onLoadFailed(@Nullable GlideException e, @Nullable Object model,
+                                                @NonNull Target<Drawable> target, boolean isFirstResource) {
+                        return false;
+                    }
+
+                    @Override
+                    public boolean onResourceReady(@NonNull Drawable resource, @NonNull Object model,
+                                                   Target<Drawable> target, @NonNull DataSource dataSource,
+                                                   boolean isFirstResource) {
+                        // Only a decoded image counts as a hit when its row is shown
+                        scheduler.onPrefetchCompleted(position);
+                        return false;
+                    }
+                })
+                .preload();
+        targets.put(position, target);
+    }
+
+    @Override
+    public void cancel(int position) {
+        Target<Drawable> target = targets.get(position);
+        if (target != null) {
+            requestManager.clear(target);
+            targets.remove(position);
+        }
+    }
+
+    // Stop all pending prefetches and report how well they did
+    public void detach() {
+        governor.removeListener(budgetListener);
+        scheduler.cancelAll();
+        if (scrollView != null) {
+            scrollView.setOnScrollChangeListener(null);
+            scrollView = null;
+        }
+        Log.d(TAG, scheduler.getStats());
+    }
+}
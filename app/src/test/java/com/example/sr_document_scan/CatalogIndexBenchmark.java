@@ -0,0 +1,97 @@
+package com.example.sr_document_scan;
+
+import org.json.JSONObject;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// Rough JVM timings for the home screen's first page on a large catalog, including the
+// one-off load (parsing every stored record and building the indexes) that happens on
+// the catalog thread before the first query. Timing only, so it is not part of the
+// regular test run: remove @Ignore locally, run
+// ./gradlew testDebugUnitTest --tests '*CatalogIndexBenchmark' and read stdout.
+@Ignore("Benchmark, run by hand")
+public class CatalogIndexBenchmark {
+    private static final int FOLDERS = 100_000;
+    private static final int PAGES_PER_FOLDER = 5;
+    private static final int PAGE_SIZE = 50;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void firstPageLatency_100kFolders() throws Exception {
+        Random random = new Random(42);
+        List<String> records = new ArrayList<>(FOLDERS);
+        for (int i = 0; i < FOLDERS; i++) {
+            records.add(storedRecord(1_700_000_000_000L + i * 1000L, "Scan_" + random.nextInt(FOLDERS),
+                    random.nextInt(50_000_000)));
+        }
+
+        // What DocumentStorageManager does per record on the first load
+        CatalogIndex index = new CatalogIndex();
+        long loadStart = System.nanoTime();
+        for (String json : records) {
+            JSONObject record = new JSONObject(json);
+            DocumentFolder folder = DocumentStorageManager.fromRecord(record);
+            index.put(FolderSummary.from(folder, record.getLong("sizeBytes")));
+        }
+        long loadNanos = System.nanoTime() - loadStart;
+        System.out.println("Catalog load (parse + index), " + FOLDERS + " folders: " + loadNanos / 1_000_000 + " ms");
+
+        for (CatalogQuery.SortKey key : CatalogQuery.SortKey.values()) {
+            CatalogQuery query = new CatalogQuery().sortBy(key, true).page(0, PAGE_SIZE);
+
+            // Warm up the JIT before timing
+            for (int i = 0; i < ROUNDS; i++) {
+                index.query(query);
+            }
+            long start = System.nanoTime();
+            List<FolderSummary> page = null;
+            for (int i = 0; i < ROUNDS; i++) {
+                page = index.query(query);
+            }
+            long perQuery = (System.nanoTime() - start) / ROUNDS;
+
+            assertEquals(PAGE_SIZE, page.size());
+            System.out.println("First page sorted by " + key + ": " + perQuery / 1000 + " us");
+        }
+
+        // Baseline: what loadFolders() + sorting the full list costs per screen
+        List<FolderSummary> all = index.query(new CatalogQuery());
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            List<FolderSummary> copy = new java.util.ArrayList<>(all);
+            copy.sort((a, b) -> a.getNameLower().compareTo(b.getNameLower()));
+        }
+        System.out.println("Full sort baseline by name: " + (System.nanoTime() - start) / 10 / 1000 + " us");
+
+        // A one-folder update stays logarithmic
+        long updateStart = System.nanoTime();
+        index.put(new FolderSummary(all.get(0).getId(), "Renamed", all.get(0).getCreatedAt(), 3, 1));
+        System.out.println("Single folder update: " + (System.nanoTime() - updateStart) / 1000 + " us");
+        assertEquals(FOLDERS, index.size());
+    }
+
+    // A folder record as updateFolder() stores it
+    private static String storedRecord(long createdAt, String name, long sizeBytes) throws Exception {
+        StringBuilder pages = new StringBuilder();
+        for (int i = 0; i < PAGES_PER_FOLDER; i++) {
+            if (i > 0) {
+                pages.append(',');
+            }
+            pages.append("{\"uri\":\"file:///data/").append(createdAt).append("/page_").append(i)
+                    .append(".jpg\",\"name\":\"Page_").append(i)
+                    .append("\",\"timestamp\":\"Nov 14, 2023 22:13:20\",\"createdAt\":").append(createdAt)
+                    .append(",\"rotation\":0,\"originalUri\":\"file:///data/").append(createdAt)
+                    .append("/page_").append(i).append(".jpg\"}");
+        }
+        return "{\"version\":2,\"id\":\"" + createdAt + "\",\"name\":\"" + name
+                + "\",\"timestamp\":\"Nov 14, 2023 22:13:20\",\"createdAt\":" + createdAt
+                + ",\"enhancement\":\"ORIGINAL\",\"deskew\":false,\"sizeBytes\":" + sizeBytes
+                + ",\"documents\":[" + pages + "]}";
+    }
+}
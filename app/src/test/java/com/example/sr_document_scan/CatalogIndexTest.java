@@ -0,0 +1,102 @@
+package com.example.sr_document_scan;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CatalogIndexTest {
+
+    private CatalogIndex index;
+
+    @Before
+    public void setUp() {
+        index = new CatalogIndex();
+        index.put(new FolderSummary("1000", "Invoice", 1000, 3, 300));
+        index.put(new FolderSummary("2000", "contract", 2000, 12, 100));
+        index.put(new FolderSummary("3000", "Receipt", 3000, 1, 900));
+        index.put(new FolderSummary("4000", "Contract draft", 4000, 7, 500));
+    }
+
+    private static List<String> ids(List<FolderSummary> summaries) {
+        List<String> ids = new ArrayList<>();
+        for (FolderSummary summary : summaries) {
+            ids.add(summary.getId());
+        }
+        return ids;
+    }
+
+    private static List<String> list(String... ids) {
+        List<String> result = new ArrayList<>();
+        for (String id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    @Test
+    public void query_defaultsToNewestFirst() {
+        assertEquals(list("4000", "3000", "2000", "1000"), ids(index.query(new CatalogQuery())));
+    }
+
+    @Test
+    public void query_sortsByEachKey() {
+        assertEquals(list("2000", "4000", "1000", "3000"),
+                ids(index.query(new CatalogQuery().sortBy(CatalogQuery.SortKey.NAME, false))));
+        assertEquals(list("2000", "4000", "1000", "3000"),
+                ids(index.query(new CatalogQuery().sortBy(CatalogQuery.SortKey.PAGE_COUNT, true))));
+        assertEquals(list("2000", "1000", "4000", "3000"),
+                ids(index.query(new CatalogQuery().sortBy(CatalogQuery.SortKey.SIZE, false))));
+    }
+
+    @Test
+    public void query_paginatesWithOffsetAndLimit() {
+        CatalogQuery firstPage = new CatalogQuery().sortBy(CatalogQuery.SortKey.DATE, false).page(0, 3);
+        CatalogQuery secondPage = new CatalogQuery().sortBy(CatalogQuery.SortKey.DATE, false).page(3, 3);
+
+        assertEquals(list("1000", "2000", "3000"), ids(index.query(firstPage)));
+        assertEquals(list("4000"), ids(index.query(secondPage)));
+    }
+
+    @Test
+    public void query_filtersByNameAndDateRange() {
+        assertEquals(list("4000", "2000"),
+                ids(index.query(new CatalogQuery().nameContains("CONTRACT"))));
+        assertEquals(list("3000", "2000"),
+                ids(index.query(new CatalogQuery().createdBetween(2000, 3000))));
+        assertEquals(list("2000"),
+                ids(index.query(new CatalogQuery()
+                        .sortBy(CatalogQuery.SortKey.SIZE, true)
+                        .nameContains("contract")
+                        .createdBetween(0, 3000))));
+        assertTrue(index.query(new CatalogQuery().createdBetween(5000, 1000)).isEmpty());
+    }
+
+    @Test
+    public void put_replacesExistingEntryInEveryIndex() {
+        index.put(new FolderSummary("1000", "Zebra", 1000, 50, 1));
+
+        assertEquals(4, index.size());
+        assertEquals("1000", index.query(new CatalogQuery().sortBy(CatalogQuery.SortKey.NAME, true).page(0, 1)).get(0).getId());
+        assertEquals("1000", index.query(new CatalogQuery().sortBy(CatalogQuery.SortKey.PAGE_COUNT, true).page(0, 1)).get(0).getId());
+        assertEquals("1000", index.query(new CatalogQuery().sortBy(CatalogQuery.SortKey.SIZE, false).page(0, 1)).get(0).getId());
+    }
+
+    @Test
+    public void remove_dropsEntryFromEveryIndex() {
+        index.remove("3000");
+
+        assertEquals(3, index.size());
+        for (CatalogQuery.SortKey key : CatalogQuery.SortKey.values()) {
+            assertFalse(ids(index.query(new CatalogQuery().sortBy(key, true))).contains("3000"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void page_rejectsNegativeOffset() {
+        new CatalogQuery().page(-1, 10);
+    }
+}
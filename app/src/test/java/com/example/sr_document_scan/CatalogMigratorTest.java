@@ -0,0 +1,412 @@
+package com.example.sr_document_scan;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CatalogMigratorTest {
+
+    // A folder exactly as the first release's saveFolders() wrote it
+    private static final String LEGACY_FOLDER = "{\"id\":\"1745418645000\",\"name\":\"Lease\","
+            + "\"timestamp\":\"Apr 23, 2025 14:30:45\",\"documents\":["
+            + "{\"uri\":\"content://scanner/page1.jpg\",\"name\":\"Page_20250423_143045\",\"timestamp\":\"Apr 23, 2025 14:30:45\"},"
+            + "{\"uri\":\"content://scanner/page2.jpg\",\"name\":\"Page_20250423_143112\",\"timestamp\":\"Apr 23, 2025 14:31:12\"}]}";
+
+    // In-memory stand-in for SharedPreferences
+    private static class MemoryStore implements CatalogSweeper.Store {
+        final Object lock = new Object();
+        // Runs once, just before the sweeper next takes the lock
+        Runnable beforeLock;
+        List<String> ids;
+        final Map<String, String> records = new HashMap<>();
+        int cursor;
+        int completeVersion = -1;
+        int writes;
+        boolean failWrites;
+        // Every thread that called into the store
+        final Set<Thread> callers = Collections.synchronizedSet(new HashSet<Thread>());
+
+        MemoryStore(JSONArray catalog) throws JSONException {
+            if (catalog == null) {
+                return;
+            }
+            ids = new ArrayList<>();
+            for (int i = 0; i < catalog.length(); i++) {
+                add(catalog.getJSONObject(i));
+            }
+        }
+
+        void add(JSONObject record) throws JSONException {
+            ids.add(record.getString("id"));
+            records.put(record.getString("id"), record.toString());
+        }
+
+        JSONObject record(int index) throws JSONException {
+            return new JSONObject(records.get(ids.get(index)));
+        }
+
+        @Override
+        public Object getLock() {
+            if (beforeLock != null) {
+                Runnable hook = beforeLock;
+                beforeLock = null;
+                hook.run();
+            }
+            return lock;
+        }
+
+        @Override
+        public List<String> readIds() {
+            callers.add(Thread.currentThread());
+            return ids;
+        }
+
+        @Override
+        public String readRecord(String id) {
+            callers.add(Thread.currentThread());
+            return records.get(id);
+        }
+
+        @Override
+        public int readCursor() {
+            callers.add(Thread.currentThread());
+            return cursor;
+        }
+
+        @Override
+        public boolean write(Map<String, String> updated, int cursor) {
+            callers.add(Thread.currentThread());
+            if (failWrites) {
+                return false;
+            }
+            records.putAll(updated);
+            this.cursor = cursor;
+            writes++;
+            return true;
+        }
+
+        @Override
+        public void markComplete(int version) {
+            callers.add(Thread.currentThread());
+            completeVersion = version;
+            cursor = 0;
+        }
+
+        @Override
+        public int readCompleteVersion() {
+            callers.add(Thread.currentThread());
+            return completeVersion;
+        }
+    }
+
+    // Counts how often it runs on each folder id
+    private static class CountingStep implements CatalogMigrator.Step {
+        final List<String> seen = new ArrayList<>();
+
+        @Override
+        public String getDescription() {
+            return "count";
+        }
+
+        @Override
+        public void apply(JSONObject record) throws JSONException {
+            seen.add(record.getString("id"));
+        }
+    }
+
+    private static JSONArray legacyCatalog(int folders) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < folders; i++) {
+            JSONObject folder = new JSONObject(LEGACY_FOLDER);
+            folder.put("id", String.valueOf(1745418645000L + i));
+            array.put(folder);
+        }
+        return array;
+    }
+
+    private static long usTime(String text) throws Exception {
+        return new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.US).parse(text).getTime();
+    }
+
+    @Test
+    public void upgrade_legacyRecordReachesCurrentVersion() throws Exception {
+        CatalogMigrator migrator = CatalogMigrator.standard();
+        JSONObject record = new JSONObject(LEGACY_FOLDER);
+        assertEquals(0, CatalogMigrator.versionOf(record));
+
+        assertTrue(migrator.upgrade(record));
+
+        assertEquals(migrator.getCurrentVersion(), CatalogMigrator.versionOf(record));
+        assertEquals("Lease", record.getString("name"));
+        assertEquals("Apr 23, 2025 14:30:45", record.getString("timestamp"));
+        assertEquals(1745418645000L, record.getLong("createdAt"));
+        assertEquals("ORIGINAL", record.getString("enhancement"));
+        assertFalse(record.getBoolean("deskew"));
+
+        JSONArray documents = record.getJSONArray("documents");
+        assertEquals(2, documents.length());
+        JSONObject second = documents.getJSONObject(1);
+        assertEquals("content://scanner/page2.jpg", second.getString("uri"));
+        assertEquals("content://scanner/page2.jpg", second.getString("originalUri"));
+        assertEquals(0, second.getInt("rotation"));
+        assertEquals("Apr 23, 2025 14:31:12", second.getString("timestamp"));
+        assertEquals(usTime("Apr 23, 2025 14:31:12"), second.getLong("createdAt"));
+    }
+
+    @Test
+    public void upgrade_keepsValuesWrittenByLaterUnversionedBuilds() throws Exception {
+        JSONObject record = new JSONObject(LEGACY_FOLDER);
+        record.put("enhancement", "BLACK_WHITE");
+        record.put("deskew", true);
+        JSONObject page = record.getJSONArray("documents").getJSONObject(0);
+        page.put("rotation", 90);
+        page.put("originalUri", "file:///data/original.jpg");
+
+        CatalogMigrator.standard().upgrade(record);
+
+        assertEquals("BLACK_WHITE", record.getString("enhancement"));
+        assertTrue(record.getBoolean("deskew"));
+        assertEquals(90, page.getInt("rotation"));
+        assertEquals("file:///data/original.jpg", page.getString("originalUri"));
+    }
+
+    @Test
+    public void upgrade_runsOnlyMissingStepsAndLeavesCurrentAndNewerAlone() throws Exception {
+        CountingStep first = new CountingStep();
+        CountingStep second = new CountingStep();
+        CatalogMigrator migrator = new CatalogMigrator(Arrays.<CatalogMigrator.Step>asList(first, second));
+
+        JSONObject atOne = new JSONObject("{\"id\":\"a\",\"version\":1}");
+        JSONObject current = new JSONObject("{\"id\":\"b\",\"version\":2}");
+        JSONObject newer = new JSONObject("{\"id\":\"c\",\"version\":7}");
+
+        assertTrue(migrator.upgrade(atOne));
+        assertFalse(migrator.upgrade(current));
+        assertFalse(migrator.upgrade(newer));
+
+        assertEquals(new ArrayList<String>(), first.seen);
+        assertEquals(Arrays.asList("a"), second.seen);
+        assertEquals(2, CatalogMigrator.versionOf(atOne));
+        assertEquals(7, CatalogMigrator.versionOf(newer));
+    }
+
+    @Test
+    public void parseDisplayTime_fallsBackWhenUnreadable() throws Exception {
+        CatalogMigrator.EpochTimestampsStep step = new CatalogMigrator.EpochTimestampsStep();
+        assertEquals(42L, step.parseDisplayTime("yesterday", 42L));
+        assertEquals(42L, step.parseDisplayTime("", 42L));
+        // The cached formatters still parse after a failure
+        assertEquals(usTime("Apr 23, 2025 14:31:12"), step.parseDisplayTime("Apr 23, 2025 14:31:12", 42L));
+    }
+
+    @Test
+    public void sweeper_migratesInBoundedSlices() throws Exception {
+        MemoryStore store = new MemoryStore(legacyCatalog(250));
+        CatalogSweeper sweeper = new CatalogSweeper(CatalogMigrator.standard(), store, 100);
+
+        assertTrue(sweeper.runSlice());
+        assertEquals(100, store.cursor);
+        assertEquals(2, CatalogMigrator.versionOf(store.record(99)));
+        assertEquals(0, CatalogMigrator.versionOf(store.record(100)));
+
+        assertTrue(sweeper.runSlice());
+        assertFalse(sweeper.runSlice());
+
+        for (int i = 0; i < store.ids.size(); i++) {
+            assertEquals(2, CatalogMigrator.versionOf(store.record(i)));
+        }
+        assertEquals(250, sweeper.getMigrated());
+        assertEquals(3, store.writes);
+        assertEquals(2, store.completeVersion);
+    }
+
+    @Test
+    public void sweeper_resumesAfterCrashWithoutRepeatingWork() throws Exception {
+        MemoryStore store = new MemoryStore(legacyCatalog(10));
+        CountingStep step = new CountingStep();
+        List<CatalogMigrator.Step> steps = Arrays.<CatalogMigrator.Step>asList(step);
+
+        new CatalogSweeper(new CatalogMigrator(steps), store, 4).runSlice();
+
+        // The next slice never reaches storage, as if the process died mid-write
+        CatalogSweeper crashed = new CatalogSweeper(new CatalogMigrator(steps), store, 4);
+        store.failWrites = true;
+        assertTrue(crashed.runSlice());
+        assertEquals(4, store.cursor);
+
+        // A fresh sweeper in the next process carries on from the stored cursor
+        store.failWrites = false;
+        CatalogSweeper resumed = new CatalogSweeper(new CatalogMigrator(steps), store, 4);
+        while (resumed.runSlice()) {
+            // keep going
+        }
+
+        for (int i = 0; i < store.ids.size(); i++) {
+            assertEquals(1, CatalogMigrator.versionOf(store.record(i)));
+        }
+        assertEquals(6, resumed.getMigrated());
+        // Records 4-7 were attempted twice (once lost), every stored record was migrated once
+        assertEquals(14, step.seen.size());
+        assertEquals(1, store.completeVersion);
+    }
+
+    @Test
+    public void sweeper_picksUpFoldersAddedBetweenSlices() throws Exception {
+        MemoryStore store = new MemoryStore(legacyCatalog(6));
+        CatalogSweeper sweeper = new CatalogSweeper(CatalogMigrator.standard(), store, 3);
+        sweeper.runSlice();
+
+        // The app saves a new folder meanwhile, at the end of the catalog
+        store.add(new JSONObject("{\"version\":2,\"id\":\"new\",\"name\":\"New\",\"documents\":[]}"));
+
+        while (sweeper.runSlice()) {
+            // keep going
+        }
+
+        assertEquals(7, store.ids.size());
+        assertEquals("new", store.record(6).getString("id"));
+        for (int i = 0; i < store.ids.size(); i++) {
+            assertEquals(2, CatalogMigrator.versionOf(store.record(i)));
+        }
+        assertEquals(6, sweeper.getMigrated());
+    }
+
+    @Test
+    public void sweeper_upgradesWithoutHoldingTheLock() throws Exception {
+        final MemoryStore store = new MemoryStore(legacyCatalog(5));
+        CatalogMigrator.Step step = new CatalogMigrator.Step() {
+            @Override
+            public String getDescription() {
+                return "check lock";
+            }
+
+            @Override
+            public void apply(JSONObject record) {
+                assertFalse(Thread.holdsLock(store.lock));
+            }
+        };
+
+        assertFalse(new CatalogSweeper(new CatalogMigrator(Arrays.asList(step)), store, 10).runSlice());
+        assertEquals(1, CatalogMigrator.versionOf(store.record(4)));
+    }
+
+    @Test
+    public void sweeper_keepsRecordSavedWhileSliceWasUpgraded() throws Exception {
+        final MemoryStore store = new MemoryStore(legacyCatalog(4));
+        final String savedId = store.ids.get(1);
+        // The app saves folder 1 after the sweeper read it but before it writes
+        store.beforeLock = new Runnable() {
+            @Override
+            public void run() {
+                store.records.put(savedId, "{\"version\":2,\"id\":\"" + savedId
+                        + "\",\"name\":\"Saved\",\"documents\":[]}");
+            }
+        };
+        CatalogSweeper sweeper = new CatalogSweeper(CatalogMigrator.standard(), store, 10);
+
+        assertFalse(sweeper.runSlice());
+
+        assertEquals("Saved", store.record(1).getString("name"));
+        assertEquals(3, sweeper.getMigrated());
+        for (int i = 0; i < store.ids.size(); i++) {
+            assertEquals(2, CatalogMigrator.versionOf(store.record(i)));
+        }
+    }
+
+    @Test
+    public void sweeper_skipsRecordsThatCannotBeMigrated() throws Exception {
+        JSONArray catalog = legacyCatalog(3);
+        catalog.getJSONObject(1).put("documents", new JSONArray("[\"not a page\"]"));
+        MemoryStore store = new MemoryStore(catalog);
+        CatalogSweeper sweeper = new CatalogSweeper(CatalogMigrator.standard(), store, 10);
+
+        assertFalse(sweeper.runSlice());
+
+        assertEquals(2, CatalogMigrator.versionOf(store.record(0)));
+        assertEquals(0, CatalogMigrator.versionOf(store.record(1)));
+        assertEquals(2, CatalogMigrator.versionOf(store.record(2)));
+        assertEquals(1, sweeper.getFailed());
+    }
+
+    @Test
+    public void sweeper_emptyStoreIsComplete() throws Exception {
+        MemoryStore store = new MemoryStore(null);
+
+        assertFalse(new CatalogSweeper(CatalogMigrator.standard(), store, 10).runSlice());
+        assertEquals(2, store.completeVersion);
+    }
+
+    @Test
+    public void sweepOn_leavesTheStoreAloneOnTheCallingThread() throws Exception {
+        final MemoryStore store = new MemoryStore(legacyCatalog(25));
+        CatalogSweeper sweeper = new CatalogSweeper(CatalogMigrator.standard(), store, 10);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final Exception[] error = new Exception[1];
+
+        try {
+            sweeper.sweepOn(executor, 0, new CatalogSweeper.Callback() {
+                @Override
+                public void onSweepFinished(Exception e) {
+                    error[0] = e;
+                    finished.countDown();
+                }
+            });
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertNull(error[0]);
+        assertEquals(2, store.completeVersion);
+        assertEquals(25, sweeper.getMigrated());
+        assertFalse(store.callers.isEmpty());
+        assertFalse(store.callers.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void sweepOn_completeCatalogIsNotSweptAgain() throws Exception {
+        MemoryStore store = new MemoryStore(legacyCatalog(5));
+        store.completeVersion = CatalogMigrator.standard().getCurrentVersion();
+        CatalogSweeper sweeper = new CatalogSweeper(CatalogMigrator.standard(), store, 10);
+        final List<Exception> results = new ArrayList<>();
+
+        // Runs the sweep inline, once the calling code has returned from sweepOn
+        final List<Runnable> tasks = new ArrayList<>();
+        sweeper.sweepOn(new java.util.concurrent.Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, 0, new CatalogSweeper.Callback() {
+            @Override
+            public void onSweepFinished(Exception e) {
+                results.add(e);
+            }
+        });
+        assertTrue(store.callers.isEmpty());
+
+        tasks.get(0).run();
+        assertEquals(Collections.<Exception>singletonList(null), results);
+        assertEquals(0, store.writes);
+        assertEquals(0, CatalogMigrator.versionOf(store.record(0)));
+    }
+}
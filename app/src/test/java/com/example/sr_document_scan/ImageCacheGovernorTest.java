@@ -0,0 +1,165 @@
+package com.example.sr_document_scan;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImageCacheGovernorTest {
+    private static final long MB = 1024L * 1024L;
+
+    // Stand-in for an LRU cache: holds bytes and evicts down to its current max size
+    private static class FakeCache implements ImageCacheGovernor.Cache {
+        final long initialMaxSize;
+        long maxSize;
+        long currentSize;
+        long evictedBytes;
+        int clears;
+
+        FakeCache(long initialMaxSize) {
+            this.initialMaxSize = initialMaxSize;
+            this.maxSize = initialMaxSize;
+        }
+
+        void fill() {
+            currentSize = maxSize;
+        }
+
+        @Override
+        public void setSizeMultiplier(float multiplier) {
+            maxSize = (long) (initialMaxSize * (double) multiplier);
+            if (currentSize > maxSize) {
+                evictedBytes += currentSize - maxSize;
+                currentSize = maxSize;
+            }
+        }
+
+        @Override
+        public void clearMemory() {
+            evictedBytes += currentSize;
+            currentSize = 0;
+            clears++;
+        }
+    }
+
+    private ImageCachePolicy policy;
+    private ImageCacheGovernor governor;
+    private FakeCache memoryCache;
+    private FakeCache bitmapPool;
+
+    @Before
+    public void setUp() {
+        policy = ImageCachePolicy.forDevice(256, false);
+        governor = new ImageCacheGovernor(policy);
+        memoryCache = new FakeCache(policy.getMemoryCacheBytes());
+        bitmapPool = new FakeCache(policy.getBitmapPoolBytes());
+        governor.addCache(memoryCache);
+        governor.addCache(bitmapPool);
+        memoryCache.fill();
+        bitmapPool.fill();
+    }
+
+    @Test
+    public void budgets_scaleWithMemoryClass() {
+        ImageCachePolicy small = ImageCachePolicy.forDevice(128, false);
+        ImageCachePolicy large = ImageCachePolicy.forDevice(512, false);
+
+        assertEquals(2 * small.getMemoryCacheBytes(), ImageCachePolicy.forDevice(256, false).getMemoryCacheBytes());
+        assertTrue(large.getMemoryCacheBytes() > small.getMemoryCacheBytes());
+        assertTrue(large.getBitmapPoolBytes() > small.getBitmapPoolBytes());
+        assertEquals(250 * MB, large.getDiskCacheBytes());
+    }
+
+    @Test
+    public void budgets_lowRamDeviceGetsSmallerCaches() {
+        ImageCachePolicy normal = ImageCachePolicy.forDevice(128, false);
+        ImageCachePolicy lowRam = ImageCachePolicy.forDevice(128, true);
+
+        assertTrue(lowRam.getMemoryCacheBytes() < normal.getMemoryCacheBytes());
+        assertTrue(lowRam.getBitmapPoolBytes() < normal.getBitmapPoolBytes());
+        assertTrue(lowRam.getDiskCacheBytes() < normal.getDiskCacheBytes());
+    }
+
+    @Test
+    public void trim_runningLevelsShrinkStepByStep() {
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(0.75f, governor.getMultiplier(), 0f);
+        assertEquals((long) (policy.getMemoryCacheBytes() * 0.75), governor.getMemoryCacheBudget());
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(0.5f, governor.getMultiplier(), 0f);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(0.25f, governor.getMultiplier(), 0f);
+        assertEquals((long) (policy.getMemoryCacheBytes() * 0.25), memoryCache.currentSize);
+        assertEquals((long) (policy.getBitmapPoolBytes() * 0.25), bitmapPool.currentSize);
+        assertEquals(policy.getMemoryCacheBytes() - memoryCache.currentSize, memoryCache.evictedBytes);
+    }
+
+    @Test
+    public void trim_milderLevelDoesNotGrowCaches() {
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        long evicted = memoryCache.evictedBytes;
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertEquals(0.25f, governor.getMultiplier(), 0f);
+        assertEquals(evicted, memoryCache.evictedBytes);
+    }
+
+    @Test
+    public void trim_completeClearsEverything() {
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertEquals(0L, governor.getMemoryCacheBudget());
+        assertEquals(0L, memoryCache.currentSize);
+        assertEquals(0L, bitmapPool.currentSize);
+        assertEquals(1, memoryCache.clears);
+        assertEquals(policy.getBitmapPoolBytes(), bitmapPool.evictedBytes);
+    }
+
+    @Test
+    public void lowMemory_clearsEverything() {
+        governor.onLowMemory();
+
+        assertEquals(0L, memoryCache.currentSize);
+        assertEquals(0L, bitmapPool.currentSize);
+    }
+
+    @Test
+    public void foreground_restoresFullBudgetAndNotifiesListeners() {
+        final long[] lastBudget = {-1};
+        governor.addListener(memoryCacheBytes -> lastBudget[0] = memoryCacheBytes);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(policy.getMemoryCacheBytes() / 2, lastBudget[0]);
+        assertEquals(policy.getMemoryCacheBytes() / 2, memoryCache.maxSize);
+
+        governor.onForeground();
+        assertEquals(1f, governor.getMultiplier(), 0f);
+        assertEquals(policy.getMemoryCacheBytes(), lastBudget[0]);
+        assertEquals(policy.getMemoryCacheBytes(), memoryCache.maxSize);
+    }
+
+    @Test
+    public void prefetchCap_followsMemoryBudget() {
+        PrefetchScheduler scheduler = new PrefetchScheduler(new PrefetchScheduler.Loader() {
+            @Override
+            public void prefetch(int position) {
+            }
+
+            @Override
+            public void cancel(int position) {
+            }
+        }, 100, 6, 1000f, 10 * MB, 2 * MB);
+        assertEquals(5, scheduler.getPrefetchCap());
+
+        scheduler.setMemoryBudget(100 * MB);
+        assertEquals(6, scheduler.getPrefetchCap());
+
+        scheduler.setMemoryBudget(0);
+        assertEquals(0, scheduler.getPrefetchCap());
+    }
+}
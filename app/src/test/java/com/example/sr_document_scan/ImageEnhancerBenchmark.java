@@ -0,0 +1,70 @@
+package com.example.sr_document_scan;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+// Rough JVM timings per megapixel for each enhancement mode, on one thread and on the
+// common pool. Timing only, so it is not part of the regular test run: remove @Ignore
+// locally, run ./gradlew testDebugUnitTest --tests '*ImageEnhancerBenchmark'.
+@Ignore("Benchmark, run by hand")
+public class ImageEnhancerBenchmark {
+    private static final int WIDTH = 2480;
+    private static final int HEIGHT = 3508;   // A4 at 300 dpi, about 8.7 MP
+    private static final int ROUNDS = 3;
+
+    private static int[] page() {
+        Random random = new Random(7);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int v = (y / 40) % 2 == 0 && random.nextInt(3) == 0 ? 40 : 200 + random.nextInt(40);
+                pixels[y * WIDTH + x] = 0xff000000 | (v << 16) | (v << 8) | (v - 10);
+            }
+        }
+        return pixels;
+    }
+
+    private static double msPerMegapixel(ImageEnhancer enhancer, int[] source, ImageEnhancer.Mode mode, boolean deskew) {
+        int[] pixels = source.clone();
+        enhancer.enhance(pixels, WIDTH, HEIGHT, mode, deskew);   // warm-up
+
+        long total = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            System.arraycopy(source, 0, pixels, 0, source.length);
+            long start = System.nanoTime();
+            int[] out = enhancer.enhance(pixels, WIDTH, HEIGHT, mode, deskew);
+            total += System.nanoTime() - start;
+            assertEquals(source.length, out.length);
+        }
+        double megapixels = WIDTH * (double) HEIGHT / 1_000_000;
+        return total / 1e6 / ROUNDS / megapixels;
+    }
+
+    @Test
+    public void perMegapixel() {
+        int[] source = page();
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            ImageEnhancer serial = new ImageEnhancer(single, ImageEnhancer.TILE_SIZE);
+            ImageEnhancer parallel = new ImageEnhancer();
+            for (ImageEnhancer.Mode mode : ImageEnhancer.Mode.values()) {
+                for (boolean deskew : new boolean[]{false, true}) {
+                    if (mode == ImageEnhancer.Mode.ORIGINAL && !deskew) {
+                        continue;
+                    }
+                    System.out.println(String.format("%-11s deskew=%-5s 1 thread: %6.2f ms/MP   %d threads: %6.2f ms/MP",
+                            mode, deskew, msPerMegapixel(serial, source, mode, deskew),
+                            ForkJoinPool.getCommonPoolParallelism(),
+                            msPerMegapixel(parallel, source, mode, deskew)));
+                }
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.sr_document_scan;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ImageEnhancerTest {
+
+    private static int gray(int v) {
+        return 0xff000000 | (v << 16) | (v << 8) | v;
+    }
+
+    private static int luma(int argb) {
+        return argb & 0xff;
+    }
+
+    // White page with dark text-like lines whose slope is tan(angle), y pointing down
+    private static int[] skewedLines(int width, int height, double angle) {
+        int[] pixels = new int[width * height];
+        java.util.Arrays.fill(pixels, gray(235));
+        double slope = Math.tan(Math.toRadians(angle));
+        for (int line = 60; line < height - 60; line += 24) {
+            for (int x = 40; x < width - 40; x++) {
+                // Gaps between "words"
+                if ((x / 30) % 4 == 3) {
+                    continue;
+                }
+                int y = (int) Math.round(line + (x - width / 2.0) * slope);
+                for (int t = 0; t < 4; t++) {
+                    if (y + t >= 0 && y + t < height) {
+                        pixels[(y + t) * width + x] = gray(30);
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    @Test
+    public void toGray_usesLumaWeights() {
+        ImageEnhancer enhancer = new ImageEnhancer();
+        int[] argb = {0xffffffff, 0xff000000, 0xffff0000, 0xff00ff00, 0xff0000ff};
+        byte[] gray = new byte[argb.length];
+
+        enhancer.toGray(argb, gray, argb.length, 1);
+
+        assertEquals(255, gray[0] & 0xff);
+        assertEquals(0, gray[1] & 0xff);
+        assertEquals(76, gray[2] & 0xff);
+        assertEquals(149, gray[3] & 0xff);
+        assertEquals(28, gray[4] & 0xff);
+    }
+
+    @Test
+    public void normalizeContrast_stretchesToFullRange() {
+        ImageEnhancer enhancer = new ImageEnhancer(ForkJoinPool.commonPool(), 16);
+        int width = 100;
+        int height = 50;
+        byte[] gray = new byte[width * height];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = (byte) (100 + (i % width) / 2);
+        }
+
+        enhancer.normalizeContrast(gray, width, height);
+
+        int min = 255;
+        int max = 0;
+        for (byte b : gray) {
+            min = Math.min(min, b & 0xff);
+            max = Math.max(max, b & 0xff);
+        }
+        assertTrue("min " + min, min <= 5);
+        assertTrue("max " + max, max >= 250);
+    }
+
+    @Test
+    public void binarize_handlesUnevenLighting() {
+        ImageEnhancer enhancer = new ImageEnhancer(ForkJoinPool.commonPool(), 32);
+        int width = 320;
+        int height = 160;
+        byte[] gray = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Background fades from 110 to 240, "ink" is 40% darker than its surroundings
+                int background = 110 + 130 * x / width;
+                boolean ink = (x % 40) >= 10 && (x % 40) < 16 && y > 40 && y < 120;
+                gray[y * width + x] = (byte) (ink ? background * 6 / 10 : background);
+            }
+        }
+        byte[] out = new byte[gray.length];
+
+        enhancer.binarize(gray, out, width, height);
+
+        // Ink on the dark side and on the bright side both come out black, paper white
+        assertEquals(0, out[80 * width + 12] & 0xff);
+        assertEquals(0, out[80 * width + 292] & 0xff);
+        assertEquals(255, out[80 * width + 25] & 0xff);
+        assertEquals(255, out[80 * width + 305] & 0xff);
+        assertEquals(255, out[10 * width + 12] & 0xff);
+    }
+
+    @Test
+    public void tiledResult_matchesSingleTile() {
+        int width = 300;
+        int height = 220;
+        int[] a = skewedLines(width, height, 1.5);
+        int[] b = a.clone();
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            int[] whole = new ImageEnhancer(single, 1 << 16).enhance(a, width, height, ImageEnhancer.Mode.BLACK_WHITE, true);
+            int[] tiled = new ImageEnhancer(parallel, 37).enhance(b, width, height, ImageEnhancer.Mode.BLACK_WHITE, true);
+            assertArrayEquals(whole, tiled);
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void estimateSkew_findsAngleAndDeskewLevelsLines() {
+        ImageEnhancer enhancer = new ImageEnhancer();
+        int width = 800;
+        int height = 600;
+        int[] pixels = skewedLines(width, height, 2.0);
+        byte[] gray = new byte[width * height];
+        enhancer.toGray(pixels, gray, width, height);
+
+        assertEquals(2.0, enhancer.estimateSkew(gray, width, height), 0.21);
+
+        int[] straightened = enhancer.enhance(pixels, width, height, ImageEnhancer.Mode.GRAYSCALE, true);
+        enhancer.toGray(straightened, gray, width, height);
+        assertEquals(0.0, enhancer.estimateSkew(gray, width, height), 0.21);
+    }
+
+    @Test
+    public void estimateSkew_blankPageIsZero() {
+        ImageEnhancer enhancer = new ImageEnhancer();
+        byte[] gray = new byte[200 * 100];
+        java.util.Arrays.fill(gray, (byte) 240);
+
+        assertEquals(0.0, enhancer.estimateSkew(gray, 200, 100), 0.0);
+    }
+
+    @Test
+    public void enhance_originalWithoutDeskewIsUntouched() {
+        int[] pixels = {0xff123456, 0xff654321};
+        int[] result = new ImageEnhancer().enhance(pixels, 2, 1, ImageEnhancer.Mode.ORIGINAL, false);
+
+        assertSame(pixels, result);
+        assertEquals(0xff123456, result[0]);
+    }
+
+    @Test
+    public void enhance_grayscaleOutputHasEqualChannels() {
+        int[] pixels = {0xffff0000, 0xff00ff00, 0xff0000ff, 0xff808080};
+        int[] result = new ImageEnhancer().enhance(pixels, 2, 2, ImageEnhancer.Mode.GRAYSCALE, false);
+
+        for (int p : result) {
+            assertEquals(luma(p), (p >> 8) & 0xff);
+            assertEquals(luma(p), (p >> 16) & 0xff);
+        }
+    }
+}
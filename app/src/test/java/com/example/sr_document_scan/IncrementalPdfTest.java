@@ -0,0 +1,488 @@
+package com.example.sr_document_scan;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class IncrementalPdfTest {
+
+    private File pdfFile;
+
+    @Before
+    public void setUp() throws IOException {
+        pdfFile = File.createTempFile("incremental", ".pdf");
+    }
+
+    @After
+    public void tearDown() {
+        pdfFile.delete();
+    }
+
+    // --- Fixtures ---
+
+    private static void writeObject(ByteArrayOutputStream out, List<Long> offsets, int number, String body) {
+        while (offsets.size() <= number) {
+            offsets.add(0L);
+        }
+        offsets.set(number, (long) out.size());
+        PdfSyntax.writeAscii(number + " 0 obj\n" + body + "\nendobj\n", out);
+    }
+
+    private static String contentStream(int page) {
+        String content = "BT /F1 12 Tf 72 720 Td (page " + page + ") Tj ET";
+        return "<< /Length " + content.length() + " >>\nstream\n" + content + "\nendstream";
+    }
+
+    // Classic xref table. Page i is object 3 + 2i with its content in 4 + 2i.
+    // When nested, pages hang off two intermediate nodes that carry /Rotate 180.
+    private static byte[] buildClassicPdf(int pageCount, boolean nested) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> offsets = new ArrayList<>();
+        PdfSyntax.writeAscii("%PDF-1.4\n", out);
+
+        int firstNode = 3 + 2 * pageCount;
+        writeObject(out, offsets, 1, "<< /Type /Catalog /Pages 2 0 R >>");
+        if (nested) {
+            writeObject(out, offsets, 2, "<< /Type /Pages /Kids [" + firstNode + " 0 R " + (firstNode + 1)
+                    + " 0 R] /Count " + pageCount + " /MediaBox [0 0 612 792] >>");
+        } else {
+            StringBuilder kids = new StringBuilder();
+            for (int i = 0; i < pageCount; i++) {
+                kids.append(3 + 2 * i).append(" 0 R ");
+            }
+            writeObject(out, offsets, 2, "<< /Type /Pages /Kids [" + kids + "] /Count " + pageCount
+                    + " /MediaBox [0 0 612 792] >>");
+        }
+
+        int half = pageCount / 2;
+        for (int i = 0; i < pageCount; i++) {
+            int parent = nested ? (i < half ? firstNode : firstNode + 1) : 2;
+            writeObject(out, offsets, 3 + 2 * i, "<< /Type /Page /Parent " + parent + " 0 R /Contents "
+                    + (4 + 2 * i) + " 0 R >>");
+            writeObject(out, offsets, 4 + 2 * i, contentStream(i));
+        }
+        if (nested) {
+            StringBuilder first = new StringBuilder();
+            StringBuilder second = new StringBuilder();
+            for (int i = 0; i < pageCount; i++) {
+                (i < half ? first : second).append(3 + 2 * i).append(" 0 R ");
+            }
+            writeObject(out, offsets, firstNode, "<< /Type /Pages /Parent 2 0 R /Rotate 180 /Kids [" + first
+                    + "] /Count " + half + " >>");
+            writeObject(out, offsets, firstNode + 1, "<< /Type /Pages /Parent 2 0 R /Kids [" + second
+                    + "] /Count " + (pageCount - half) + " >>");
+        }
+
+        long xrefOffset = out.size();
+        PdfSyntax.writeAscii("xref\n0 " + offsets.size() + "\n0000000000 65535 f\r\n", out);
+        for (int i = 1; i < offsets.size(); i++) {
+            PdfSyntax.writeAscii(String.format("%010d 00000 n\r\n", offsets.get(i)), out);
+        }
+        PdfSyntax.writeAscii("trailer\n<< /Size " + offsets.size() + " /Root 1 0 R /ID [<0123> <4567>] >>\n"
+                + "startxref\n" + xrefOffset + "\n%%EOF\n", out);
+        return out.toByteArray();
+    }
+
+    // PDF 1.5 layout: page objects inside an object stream and a Flate-compressed
+    // cross-reference stream using the PNG Up predictor. Page i is object 3 + i.
+    private static byte[] buildXrefStreamPdf(int pageCount) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> offsets = new ArrayList<>();
+        PdfSyntax.writeAscii("%PDF-1.5\n", out);
+
+        int objStm = 3 + 2 * pageCount;
+        int xrefNumber = objStm + 1;
+
+        writeObject(out, offsets, 1, "<< /Type /Catalog /Pages 2 0 R >>");
+        StringBuilder kids = new StringBuilder();
+        for (int i = 0; i < pageCount; i++) {
+            kids.append(3 + i).append(" 0 R ");
+        }
+        writeObject(out, offsets, 2, "<< /Type /Pages /Kids [" + kids + "] /Count " + pageCount
+                + " /MediaBox [0 0 612 792] >>");
+        for (int i = 0; i < pageCount; i++) {
+            writeObject(out, offsets, 3 + pageCount + i, contentStream(i));
+        }
+
+        StringBuilder header = new StringBuilder();
+        StringBuilder bodies = new StringBuilder();
+        for (int i = 0; i < pageCount; i++) {
+            header.append(3 + i).append(' ').append(bodies.length()).append(' ');
+            bodies.append("<< /Type /Page /Parent 2 0 R /Contents ").append(3 + pageCount + i).append(" 0 R >> ");
+        }
+        String streamData = header.toString() + bodies;
+        writeObject(out, offsets, objStm, "<< /Type /ObjStm /N " + pageCount + " /First " + header.length()
+                + " /Length " + streamData.length() + " >>\nstream\n" + streamData + "\nendstream");
+
+        long xrefOffset = out.size();
+        int size = xrefNumber + 1;
+        int rowLength = 1 + 4 + 2;
+        byte[] rows = new byte[size * rowLength];
+        for (int n = 0; n < size; n++) {
+            long field2;
+            int type;
+            int field3 = 0;
+            if (n == 0) {
+                type = 0;
+                field2 = 0;
+                field3 = 65535;
+            } else if (n >= 3 && n < 3 + pageCount) {
+                type = 2;
+                field2 = objStm;
+                field3 = n - 3;
+            } else if (n == xrefNumber) {
+                type = 1;
+                field2 = xrefOffset;
+            } else {
+                type = 1;
+                field2 = offsets.get(n);
+            }
+            int p = n * rowLength;
+            rows[p] = (byte) type;
+            rows[p + 1] = (byte) (field2 >>> 24);
+            rows[p + 2] = (byte) (field2 >>> 16);
+            rows[p + 3] = (byte) (field2 >>> 8);
+            rows[p + 4] = (byte) field2;
+            rows[p + 5] = (byte) (field3 >>> 8);
+            rows[p + 6] = (byte) field3;
+        }
+
+        // PNG "Up" predictor: each row stores the difference from the row above
+        byte[] predicted = new byte[size * (rowLength + 1)];
+        for (int r = 0; r < size; r++) {
+            predicted[r * (rowLength + 1)] = 2;
+            for (int c = 0; c < rowLength; c++) {
+                int up = r > 0 ? rows[(r - 1) * rowLength + c] : 0;
+                predicted[r * (rowLength + 1) + 1 + c] = (byte) (rows[r * rowLength + c] - up);
+            }
+        }
+        Deflater deflater = new Deflater();
+        deflater.setInput(predicted);
+        deflater.finish();
+        byte[] buffer = new byte[predicted.length + 64];
+        int compressedLength = deflater.deflate(buffer);
+        deflater.end();
+
+        PdfSyntax.writeAscii(xrefNumber + " 0 obj\n<< /Type /XRef /Size " + size + " /Root 1 0 R /W [1 4 2]"
+                + " /Filter /FlateDecode /DecodeParms << /Predictor 12 /Columns " + rowLength + " >>"
+                + " /Length " + compressedLength + " >>\nstream\n", out);
+        out.write(buffer, 0, compressedLength);
+        PdfSyntax.writeAscii("\nendstream\nendobj\nstartxref\n" + xrefOffset + "\n%%EOF\n", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] tinyJpeg(int width, int height) {
+        return new byte[]{
+                (byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xE0, 0, 4, 0, 0,
+                (byte) 0xFF, (byte) 0xC0, 0, 17, 8,
+                (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width,
+                3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1,
+                (byte) 0xFF, (byte) 0xD9
+        };
+    }
+
+    // --- Helpers ---
+
+    private int[] pageNumbers(IncrementalPdf pdf) {
+        int[] numbers = new int[pdf.getPageCount()];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = pdf.getPageRef(i).number;
+        }
+        return numbers;
+    }
+
+    private byte[] readFile() throws IOException {
+        return Files.readAllBytes(pdfFile.toPath());
+    }
+
+    // Every in-use entry of the last classic xref section must point at "N G obj"
+    private static void assertLastXrefTableResolves(byte[] data) {
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        int startxref = text.lastIndexOf("startxref");
+        long xrefOffset = Long.parseLong(text.substring(startxref + 9).trim().split("\\s+")[0]);
+        assertTrue(text.startsWith("xref", (int) xrefOffset));
+
+        String section = text.substring((int) xrefOffset, text.indexOf("trailer", (int) xrefOffset));
+        Matcher subsection = Pattern.compile("(\\d+) (\\d+)\\s*\\n((?:\\d{10} \\d{5} [nf]\\s*\\r?\\n)+)").matcher(section);
+        int checked = 0;
+        while (subsection.find()) {
+            int start = Integer.parseInt(subsection.group(1));
+            String[] lines = subsection.group(3).trim().split("\\r?\\n");
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i].trim().endsWith("f")) {
+                    continue;
+                }
+                long offset = Long.parseLong(lines[i].substring(0, 10));
+                assertTrue("object " + (start + i) + " offset",
+                        text.startsWith((start + i) + " 0 obj", (int) offset));
+                checked++;
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    // --- Tests ---
+
+    @Test
+    public void movePage_appendsUpdateAndKeepsOriginalBytes() throws IOException {
+        byte[] original = buildClassicPdf(4, false);
+        Files.write(pdfFile.toPath(), original);
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        pdf.movePage(0, 2);
+        pdf.commit();
+
+        byte[] updated = readFile();
+        assertArrayEquals(original, Arrays.copyOf(updated, original.length));
+        assertLastXrefTableResolves(updated);
+
+        IncrementalPdf reopened = IncrementalPdf.open(pdfFile);
+        assertArrayEquals(new int[]{5, 7, 3, 9}, pageNumbers(reopened));
+        String tail = new String(updated, original.length, updated.length - original.length, StandardCharsets.ISO_8859_1);
+        assertTrue(tail.contains("/Prev " + new String(original, StandardCharsets.ISO_8859_1)
+                .replaceAll("(?s).*startxref\\s+(\\d+).*", "$1")));
+    }
+
+    @Test
+    public void deleteRotateInsert_areVisibleAfterReparse() throws IOException {
+        Files.write(pdfFile.toPath(), buildClassicPdf(3, false));
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        pdf.removePage(1);
+        pdf.rotatePage(0, 90);
+        pdf.rotatePage(0, 270);
+        pdf.rotatePage(1, -90);
+        pdf.insertJpegPage(1, tinyJpeg(1000, 2000));
+        pdf.commit();
+
+        IncrementalPdf reopened = IncrementalPdf.open(pdfFile);
+        assertEquals(3, reopened.getPageCount());
+        assertEquals(3, reopened.getPageRef(0).number);
+        assertEquals(7, reopened.getPageRef(2).number);
+        assertEquals(0, reopened.getRotation(0));
+        assertEquals(0, reopened.getRotation(1));
+        assertEquals(270, reopened.getRotation(2));
+        assertLastXrefTableResolves(readFile());
+
+        String text = new String(readFile(), StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("/Subtype /Image"));
+        assertTrue(text.contains("/Filter /DCTDecode"));
+        assertTrue(text.contains("/MediaBox [0 0 612 1224]"));
+    }
+
+    @Test
+    public void successiveCommits_chainThroughPrev() throws IOException {
+        Files.write(pdfFile.toPath(), buildClassicPdf(3, false));
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        pdf.movePage(2, 0);
+        pdf.commit();
+        pdf.rotatePage(0, 90);
+        pdf.commit();
+
+        IncrementalPdf second = IncrementalPdf.open(pdfFile);
+        second.removePage(2);
+        second.commit();
+
+        IncrementalPdf reopened = IncrementalPdf.open(pdfFile);
+        assertArrayEquals(new int[]{7, 3}, pageNumbers(reopened));
+        assertEquals(90, reopened.getRotation(0));
+        assertLastXrefTableResolves(readFile());
+    }
+
+    @Test
+    public void xrefStreamPdf_withObjectStreamsIsEdited() throws IOException {
+        byte[] original = buildXrefStreamPdf(5);
+        Files.write(pdfFile.toPath(), original);
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        assertArrayEquals(new int[]{3, 4, 5, 6, 7}, pageNumbers(pdf));
+        pdf.movePage(4, 0);
+        pdf.rotatePage(1, 90);
+        pdf.insertJpegPage(5, tinyJpeg(100, 100));
+        pdf.commit();
+
+        byte[] updated = readFile();
+        assertArrayEquals(original, Arrays.copyOf(updated, original.length));
+        String tail = new String(updated, original.length, updated.length - original.length, StandardCharsets.ISO_8859_1);
+        assertTrue(tail.contains("/Type /XRef"));
+        assertFalse(tail.contains("\ntrailer"));
+
+        IncrementalPdf reopened = IncrementalPdf.open(pdfFile);
+        assertEquals(6, reopened.getPageCount());
+        assertArrayEquals(new int[]{7, 3, 4, 5, 6}, Arrays.copyOf(pageNumbers(reopened), 5));
+        assertEquals(90, reopened.getRotation(1));
+        assertEquals(0, reopened.getRotation(0));
+    }
+
+    @Test
+    public void nestedPageTree_isFlattenedWithInheritedAttributes() throws IOException {
+        Files.write(pdfFile.toPath(), buildClassicPdf(4, true));
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        assertEquals(4, pdf.getPageCount());
+        assertEquals(180, pdf.getRotation(0));
+        assertEquals(0, pdf.getRotation(3));
+        pdf.movePage(3, 0);
+        pdf.commit();
+
+        IncrementalPdf reopened = IncrementalPdf.open(pdfFile);
+        assertArrayEquals(new int[]{9, 3, 5, 7}, pageNumbers(reopened));
+        assertEquals(180, reopened.getRotation(1));
+        assertEquals(0, reopened.getRotation(0));
+
+        String text = new String(readFile(), StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("3 0 obj\n<</Type /Page /Parent 2 0 R"));
+    }
+
+    // Root /Pages (2) carries /Rotate 90 and nothing below it does. Page 3 sits two
+    // intermediate nodes down (7, then 8), page 5 hangs directly off the root.
+    private static byte[] buildRootRotatedPdf() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> offsets = new ArrayList<>();
+        PdfSyntax.writeAscii("%PDF-1.4\n", out);
+
+        writeObject(out, offsets, 1, "<< /Type /Catalog /Pages 2 0 R >>");
+        writeObject(out, offsets, 2, "<< /Type /Pages /Kids [7 0 R 5 0 R] /Count 2 /Rotate 90"
+                + " /MediaBox [0 0 612 792] >>");
+        writeObject(out, offsets, 3, "<< /Type /Page /Parent 8 0 R /Contents 4 0 R >>");
+        writeObject(out, offsets, 4, contentStream(0));
+        writeObject(out, offsets, 5, "<< /Type /Page /Parent 2 0 R /Contents 6 0 R >>");
+        writeObject(out, offsets, 6, contentStream(1));
+        writeObject(out, offsets, 7, "<< /Type /Pages /Parent 2 0 R /Kids [8 0 R] /Count 1 >>");
+        writeObject(out, offsets, 8, "<< /Type /Pages /Parent 7 0 R /Kids [3 0 R] /Count 1 >>");
+
+        long xrefOffset = out.size();
+        PdfSyntax.writeAscii("xref\n0 " + offsets.size() + "\n0000000000 65535 f\r\n", out);
+        for (int i = 1; i < offsets.size(); i++) {
+            PdfSyntax.writeAscii(String.format("%010d 00000 n\r\n", offsets.get(i)), out);
+        }
+        PdfSyntax.writeAscii("trailer\n<< /Size " + offsets.size() + " /Root 1 0 R >>\n"
+                + "startxref\n" + xrefOffset + "\n%%EOF\n", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void rotateInheritedFromRoot_isResolvedThroughEveryLevel() throws IOException {
+        Files.write(pdfFile.toPath(), buildRootRotatedPdf());
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        assertEquals(2, pdf.getPageCount());
+        assertEquals(90, pdf.getRotation(0));
+        assertEquals(90, pdf.getRotation(1));
+
+        pdf.rotatePage(0, 90);
+        pdf.rotatePage(1, -90);
+        pdf.insertJpegPage(2, tinyJpeg(100, 100));
+        pdf.commit();
+
+        IncrementalPdf reopened = IncrementalPdf.open(pdfFile);
+        assertEquals(3, reopened.getPageCount());
+        assertEquals(3, reopened.getPageRef(0).number);
+        assertEquals(180, reopened.getRotation(0));
+        assertEquals(0, reopened.getRotation(1));
+        // A new page is not turned by the root's /Rotate
+        assertEquals(0, reopened.getRotation(2));
+        assertLastXrefTableResolves(readFile());
+    }
+
+    @Test
+    public void onePageChangeOnLargeDocument_appendsFewBytes() throws IOException {
+        byte[] original = buildClassicPdf(200, false);
+        Files.write(pdfFile.toPath(), original);
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        pdf.rotatePage(150, 90);
+        pdf.commit();
+
+        long appended = pdfFile.length() - original.length;
+        assertTrue("appended " + appended, appended < 512);
+
+        IncrementalPdf reopened = IncrementalPdf.open(pdfFile);
+        assertEquals(200, reopened.getPageCount());
+        assertEquals(90, reopened.getRotation(150));
+        assertEquals(0, reopened.getRotation(149));
+    }
+
+    @Test(expected = IOException.class)
+    public void insertJpegPage_rejectsNonJpeg() throws IOException {
+        Files.write(pdfFile.toPath(), buildClassicPdf(1, false));
+        IncrementalPdf.open(pdfFile).insertJpegPage(0, new byte[]{1, 2, 3, 4});
+    }
+
+    @Test
+    public void parser_readsNestedSyntax() throws IOException {
+        byte[] data = "<< /A [1 0 R 2.5 (a\\)b(c)) <414243>] /B#20C true /D null /E << /F -3 >> >>"
+                .getBytes(StandardCharsets.ISO_8859_1);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> dict = (Map<String, Object>) new PdfSyntax.Parser(data, 0).nextObject();
+
+        List<?> array = (List<?>) dict.get("A");
+        assertEquals(new PdfSyntax.Ref(1, 0), array.get(0));
+        assertEquals(2.5, (Double) array.get(1), 0.0);
+        assertEquals("a)b(c)", array.get(2).toString());
+        assertEquals("ABC", array.get(3).toString());
+        assertEquals(Boolean.TRUE, dict.get("B C"));
+        assertSame(PdfSyntax.NULL, dict.get("D"));
+        assertEquals(-3L, ((Map<?, ?>) dict.get("E")).get("F"));
+
+        // Round trip through the writer
+        Object reparsed = new PdfSyntax.Parser(PdfSyntax.toBytes(dict), 0).nextObject();
+        assertEquals(PdfSyntax.toBytes(dict).length, PdfSyntax.toBytes(reparsed).length);
+    }
+
+    @Test
+    public void jpegPdfWriter_writesReadableRotatedPages() throws IOException {
+        try (java.io.FileOutputStream out = new java.io.FileOutputStream(pdfFile)) {
+            JpegPdfWriter writer = new JpegPdfWriter(out);
+            writer.addPage(tinyJpeg(1000, 2000), 0);
+            writer.addPage(tinyJpeg(2000, 1000), 90);
+            writer.addPage(tinyJpeg(1000, 1000), -90);
+            writer.finish();
+            assertEquals(3, writer.getPageCount());
+        }
+        assertLastXrefTableResolves(readFile());
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        assertEquals(3, pdf.getPageCount());
+        assertEquals(0, pdf.getRotation(0));
+        assertEquals(90, pdf.getRotation(1));
+        assertEquals(270, pdf.getRotation(2));
+    }
+
+    @Test
+    public void jpegPdfWriter_outputAcceptsIncrementalUpdates() throws IOException {
+        try (java.io.FileOutputStream out = new java.io.FileOutputStream(pdfFile)) {
+            JpegPdfWriter writer = new JpegPdfWriter(out);
+            for (int i = 0; i < 4; i++) {
+                writer.addPage(tinyJpeg(100 + i, 100), 0);
+            }
+            writer.finish();
+        }
+
+        IncrementalPdf pdf = IncrementalPdf.open(pdfFile);
+        int[] before = pageNumbers(pdf);
+        pdf.movePage(0, 3);
+        pdf.commit();
+        assertLastXrefTableResolves(readFile());
+
+        int[] after = pageNumbers(IncrementalPdf.open(pdfFile));
+        assertArrayEquals(new int[]{before[1], before[2], before[3], before[0]}, after);
+    }
+}
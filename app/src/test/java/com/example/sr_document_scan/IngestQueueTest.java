@@ -0,0 +1,172 @@
+package com.example.sr_document_scan;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IngestQueueTest {
+
+    // Holds tasks until the test runs them
+    private static class ManualExecutor implements java.util.concurrent.Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runNext() {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static IngestBatch batch(String id, int pages) {
+        List<String> uris = new ArrayList<>();
+        for (int i = 0; i < pages; i++) {
+            uris.add("file:///scan/" + id + "_" + i + ".jpg");
+        }
+        return new IngestBatch(id, "folder", uris);
+    }
+
+    @Test
+    public void offer_refusesBatchesOverCapacity() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<String> processed = new ArrayList<>();
+        IngestQueue queue = new IngestQueue(10, new IngestQueue.Processor() {
+            @Override
+            public void process(IngestBatch batch) {
+                processed.add(batch.getId());
+            }
+        }, executor);
+
+        assertTrue(queue.offer(batch("a", 5)));
+        assertTrue(queue.offer(batch("b", 5)));
+        assertFalse(queue.hasRoomFor(1));
+        assertFalse(queue.offer(batch("c", 1)));
+        assertEquals(10, queue.getPendingPages());
+
+        // Finishing a batch frees its pages
+        executor.runNext();
+        assertEquals(Collections.singletonList("a"), processed);
+        assertEquals(5, queue.getPendingPages());
+        assertTrue(queue.hasRoomFor(5));
+        assertTrue(queue.offer(batch("c", 5)));
+
+        executor.runNext();
+        executor.runNext();
+        assertEquals(Arrays.asList("a", "b", "c"), processed);
+        assertEquals(0, queue.getPendingPages());
+        assertEquals(0, queue.getPendingBatches());
+    }
+
+    @Test
+    public void emptyQueue_acceptsOversizedBatch() {
+        IngestQueue queue = new IngestQueue(4, new IngestQueue.Processor() {
+            @Override
+            public void process(IngestBatch batch) {
+            }
+        }, new ManualExecutor());
+
+        assertTrue(queue.offer(batch("big", 9)));
+        assertFalse(queue.offer(batch("next", 1)));
+    }
+
+    @Test
+    public void failedBatch_isReportedAndQueueContinues() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<String> results = new ArrayList<>();
+        IngestQueue queue = new IngestQueue(10, new IngestQueue.Processor() {
+            @Override
+            public void process(IngestBatch batch) throws Exception {
+                if (batch.getId().equals("bad")) {
+                    throw new java.io.IOException("missing page");
+                }
+            }
+        }, executor);
+        queue.addListener(new IngestQueue.Listener() {
+            @Override
+            public void onBatchFinished(IngestBatch batch, Exception error) {
+                results.add(batch.getId() + (error == null ? ":ok" : ":" + error.getMessage()));
+            }
+
+            @Override
+            public void onQueueChanged(int pendingPages) {
+            }
+        });
+
+        queue.offer(batch("bad", 2));
+        queue.offer(batch("good", 2));
+        executor.runNext();
+        executor.runNext();
+
+        assertEquals(Arrays.asList("bad:missing page", "good:ok"), results);
+        assertEquals(0, queue.getPendingPages());
+    }
+
+    @Test
+    public void listener_seesPendingPagesRiseAndFall() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<Integer> counts = new ArrayList<>();
+        IngestQueue queue = new IngestQueue(10, new IngestQueue.Processor() {
+            @Override
+            public void process(IngestBatch batch) {
+            }
+        }, executor);
+        queue.addListener(new IngestQueue.Listener() {
+            @Override
+            public void onBatchFinished(IngestBatch batch, Exception error) {
+            }
+
+            @Override
+            public void onQueueChanged(int pendingPages) {
+                counts.add(pendingPages);
+            }
+        });
+
+        queue.offer(batch("a", 3));
+        queue.offer(batch("b", 4));
+        executor.runNext();
+        executor.runNext();
+
+        assertEquals(Arrays.asList(3, 7, 4, 0), counts);
+    }
+
+    @Test
+    public void producerIsNotBlockedWhileWorkerProcesses() throws InterruptedException {
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        IngestQueue queue = new IngestQueue(6, new IngestQueue.Processor() {
+            @Override
+            public void process(IngestBatch batch) throws Exception {
+                release.await();
+                order.add(batch.getId());
+                done.countDown();
+            }
+        }, worker);
+
+        try {
+            // The first batch is stuck in the worker, offers still return at once
+            assertTrue(queue.offer(batch("a", 2)));
+            assertTrue(queue.offer(batch("b", 2)));
+            assertTrue(queue.offer(batch("c", 2)));
+            assertFalse(queue.offer(batch("d", 2)));
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("a", "b", "c"), order);
+        } finally {
+            worker.shutdown();
+        }
+    }
+}
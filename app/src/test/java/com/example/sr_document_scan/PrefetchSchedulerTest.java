@@ -0,0 +1,145 @@
+package com.example.sr_document_scan;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrefetchSchedulerTest {
+    private static final int ITEM_COUNT = 50;
+    private static final int MAX_PREFETCH = 4;
+    // One extra item per 100 units/s, so 10000 units/s always reaches the cap
+    private static final float VELOCITY_PER_ITEM = 100f;
+    private static final int FAST = 1000;
+
+    // Records what the scheduler asked for, in order
+    private static class FakeLoader implements PrefetchScheduler.Loader {
+        final List<Integer> prefetched = new ArrayList<>();
+        final List<Integer> cancelled = new ArrayList<>();
+
+        @Override
+        public void prefetch(int position) {
+            prefetched.add(position);
+        }
+
+        @Override
+        public void cancel(int position) {
+            cancelled.add(position);
+        }
+    }
+
+    private FakeLoader loader;
+    private PrefetchScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        loader = new FakeLoader();
+        scheduler = new PrefetchScheduler(loader, ITEM_COUNT, MAX_PREFETCH,
+                VELOCITY_PER_ITEM, MAX_PREFETCH, 1);
+    }
+
+    @Test
+    public void reversal_cancelsPrefetchesInTheOldDirection() {
+        scheduler.onScrolled(0, 2, 10, 0);
+        scheduler.onScrolled(1, 3, FAST, 100);
+        assertEquals(Arrays.asList(3, 4, 5, 6, 7), loader.prefetched);
+        assertTrue(loader.cancelled.isEmpty());
+
+        scheduler.onScrolled(0, 2, -FAST, 200);
+
+        assertEquals(Arrays.asList(4, 5, 6, 7), sorted(loader.cancelled));
+        assertEquals(4, scheduler.getCancelled());
+        // Nothing above the top row to prefetch
+        assertEquals(5, scheduler.getIssued());
+    }
+
+    @Test
+    public void outstanding_neverExceedsCap() {
+        scheduler.setMemoryBudget(2);
+        assertEquals(2, scheduler.getPrefetchCap());
+
+        scheduler.onScrolled(0, 2, 10, 0);
+        scheduler.onScrolled(0, 2, FAST, 100);
+
+        // Fast enough for MAX_PREFETCH, but only two fit the budget
+        assertEquals(Arrays.asList(3, 4), loader.prefetched);
+        assertEquals(2, scheduler.getIssued());
+    }
+
+    @Test
+    public void outstanding_freesSlotsForItemsShownOrPassed() {
+        scheduler.setMemoryBudget(2);
+        scheduler.onScrolled(0, 2, 10, 0);
+        scheduler.onScrolled(0, 2, FAST, 100);
+        scheduler.onScrolled(10, 12, FAST, 200);
+
+        assertEquals(Arrays.asList(3, 4, 13, 14), loader.prefetched);
+        assertTrue(loader.cancelled.isEmpty());
+    }
+
+    @Test
+    public void zeroBudget_prefetchesNothing() {
+        scheduler.setMemoryBudget(0);
+        scheduler.onScrolled(0, 2, 10, 0);
+        scheduler.onScrolled(1, 3, FAST, 100);
+
+        assertTrue(loader.prefetched.isEmpty());
+    }
+
+    @Test
+    public void hitRate_countsOnlyCompletedPrefetches() {
+        scheduler.onScrolled(0, 2, 10, 0);
+        scheduler.onPrefetchCompleted(3);
+        // Row 3 finished loading, row 4 is requested now and still loading when shown
+        scheduler.onScrolled(1, 3, 10, 1000);
+        scheduler.onScrolled(2, 4, 10, 2000);
+
+        assertEquals(1, scheduler.getHits());
+        assertEquals(1, scheduler.getMisses());
+        assertEquals(0.5f, scheduler.getHitRate(), 0.0001f);
+    }
+
+    @Test
+    public void hitRate_ignoresCompletionOfPositionsNeverRequested() {
+        scheduler.onScrolled(0, 2, 10, 0);
+        scheduler.onPrefetchCompleted(3);
+        scheduler.onPrefetchCompleted(30);
+        scheduler.onScrolled(1, 3, 10, 1000);
+        scheduler.onScrolled(29, 31, 10, 2000);
+
+        assertEquals(1, scheduler.getHits());
+        assertEquals(3, scheduler.getMisses());
+        assertEquals(0.25f, scheduler.getHitRate(), 0.0001f);
+    }
+
+    @Test
+    public void hitRate_isZeroBeforeAnyItemIsShown() {
+        scheduler.onScrolled(0, 2, 10, 0);
+
+        assertEquals(0, scheduler.getHits() + scheduler.getMisses());
+        assertEquals(0f, scheduler.getHitRate(), 0f);
+    }
+
+    @Test
+    public void completionAfterCancel_isNotAHit() {
+        scheduler.onScrolled(0, 2, 10, 0);
+        scheduler.cancelAll();
+        scheduler.onPrefetchCompleted(3);
+        scheduler.onScrolled(1, 3, 10, 1000);
+
+        assertEquals(0, scheduler.getHits());
+        assertEquals(1, scheduler.getMisses());
+        assertEquals(Arrays.asList(3), loader.cancelled);
+    }
+
+    private static List<Integer> sorted(List<Integer> values) {
+        List<Integer> copy = new ArrayList<>(values);
+        Collections.sort(copy);
+        return copy;
+    }
+}